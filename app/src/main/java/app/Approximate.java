@@ -0,0 +1,222 @@
+package app;
+
+import java.io.IOException;
+import java.io.PrintStream;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+
+// Approximate mode of the chains: estimated frequencies of the most frequent
+// favorites, in a single job that shuffles one small record per map task.
+// Each mapper chooses the favorite of the users of its split and adds it to a
+// FavoriteSketch: a Count-Min sketch of the counts per movie (app.approx.epsilon,
+// default 0.001, and app.approx.delta, default 0.01), its app.approx.heavy (default
+// 100) movies with the largest estimates, and a HyperLogLog of the distinct users
+// (app.approx.hll.bits, default 14). A single reducer merges the sketches, writes the
+// heavy hitters as the usual "N movieTitle1 movieTitle2 ..." lines, in ascending
+// order, and the error bounds of the run to <output>/bounds.txt.
+// The mapper needs the ratings of a user to be consecutive, as in the MovieLens
+// files (sorted by userId): a user whose ratings are split is counted more than once,
+// which bounds.txt reports (split.users, or unsorted when the ratings are not sorted).
+// With app.approx.sample=p < 1 only a fraction p of the users is used (chosen by a
+// hash of the userId, so every rating of a sampled user is kept) and the counts are
+// scaled by 1 / p.
+// Enable it with: -D app.approx=true
+public class Approximate {
+
+    public static final String APPROX = "app.approx";
+    public static final String EPSILON = "app.approx.epsilon";
+    public static final String DELTA = "app.approx.delta";
+    public static final String HEAVY = "app.approx.heavy";
+    public static final String HLL_BITS = "app.approx.hll.bits";
+    public static final String SAMPLE = "app.approx.sample";
+
+    private Approximate() {
+    }
+
+    public static boolean isEnabled(Configuration conf) {
+        return conf.getBoolean(APPROX, false);
+    }
+
+    static double sampleRate(Configuration conf) {
+        double p = conf.getDouble(SAMPLE, 1);
+        if (p <= 0 || p > 1) {
+            throw new IllegalArgumentException(SAMPLE + " must be in (0, 1]: " + p);
+        }
+        return p;
+    }
+
+    // The sketch job, in place of every job of the chain.
+    public static Stage sketch(Pipeline pipeline, String name, Path output) {
+        return pipeline.stage(name)
+                .read(Pipeline.RATINGS)
+                .cache(Pipeline.MOVIES)
+                .map(SketchMapper.class)
+                .reduce(SketchMergeReducer.class)
+                .reducers(1)
+                .writeText(output);
+    }
+
+    // A 64-bit hash of an int (the finalizer of MurmurHash3), shared by the sketches
+    // so that every task routes an item the same way.
+    static long hash(int x) {
+        long h = x * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB93FE53B694DL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // Return true if the user is in the sample of rate p.
+    static boolean sampled(int userId, double p) {
+        return p >= 1 || (hash(userId ^ 0x5A17) >>> 11) < p * (1L << 53);
+    }
+}
+
+// Sketch Map: choose the favorite of each run of ratings of a user and add it to the
+// sketch of the task, written once at the end.
+// Input:  ratings.csv (userId,movieId,rating,timestamp) or binary ratings
+// Output: (null) sketch
+class SketchMapper extends Mapper<Object, Writable, NullWritable, FavoriteSketch> {
+
+    private MovieDictionary movies;
+    private RatingParser ratings;
+    private FavoriteSketch sketch;
+    private Counter misses;
+    private double sample;
+    private int user = -1;
+    private boolean inSample;
+    private int bestMovie = -1;
+    private byte bestRate;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        movies = MovieDictionary.fromCache(context.getCacheFiles(), conf);
+        ratings = new RatingParser(context);
+        sketch = new FavoriteSketch(conf);
+        misses = context.getCounter(Metrics.Records.JOIN_MISSES);
+        sample = Approximate.sampleRate(conf);
+    }
+
+    @Override
+    public void map(Object key, Writable value, Context context) throws IOException, InterruptedException {
+        if (!ratings.parse(key, value)) {
+            return;
+        }
+        int movieId = ratings.getMovieId();
+        if (movies.indexOf(movieId) < 0) {
+            misses.increment(1);
+            return;
+        }
+        int userId = ratings.getUserId();
+        if (userId != user) {
+            flush();
+            sketch.addUser(userId, user);
+            user = userId;
+            inSample = Approximate.sampled(userId, sample);
+        }
+        if (inSample && (bestMovie < 0 || ratings.getRate() > bestRate)) {
+            bestMovie = movieId;
+            bestRate = ratings.getRate();
+        }
+    }
+
+    private void flush() {
+        if (bestMovie >= 0) {
+            sketch.addFavorite(bestMovie);
+        }
+        bestMovie = -1;
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        flush();
+        context.write(NullWritable.get(), sketch);
+    }
+}
+
+// Sketch Reduce: merge the sketches of every task, write the heavy hitters with their
+// estimated frequency and the error bounds.
+// Input:  (null) sketch1
+//         (null) sketch2
+//         ...
+// Output: N1 movieTitle1
+//         N2 movieTitle2 movieTitle3
+//         ...
+//         bounds.txt
+class SketchMergeReducer extends Reducer<NullWritable, FavoriteSketch, IntWritable, Text> {
+
+    private final IntWritable num = new IntWritable();
+    private final Text title = new Text();
+    private final Text content = new Text();
+
+    @Override
+    public void reduce(NullWritable key, Iterable<FavoriteSketch> values, Context context) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        MovieDictionary movies = MovieDictionary.fromCache(context.getCacheFiles(), conf);
+        double p = Approximate.sampleRate(conf);
+        FavoriteSketch all = FavoriteSketch.forMerge(conf);
+        for (FavoriteSketch s : values) {
+            all.merge(s);
+        }
+
+        // the heavy hitters, their estimate scaled to all the users
+        long[] heavy = all.heavyHitters();
+        for (int i = 0; i < heavy.length;) {
+            int e = (int) (heavy[i] >>> 32);
+            StringBuilder list = new StringBuilder();
+            for (; i < heavy.length && (int) (heavy[i] >>> 32) == e; i++) {
+                if (movies.get((int) heavy[i], title)) {
+                    list.append(list.length() > 0 ? " " : "").append(title.toString());
+                }
+            }
+            if (list.length() > 0) {
+                num.set((int) Math.round(e / p));
+                content.set(list.toString());
+                context.write(num, content);
+            }
+        }
+
+        CountMinSketch counts = all.getCounts();
+        HyperLogLog users = all.getUsers();
+        long favorites = counts.getTotal();
+        long distinct = users.estimate();
+        double epsilon = conf.getDouble(Approximate.EPSILON, 0.001);
+        double delta = conf.getDouble(Approximate.DELTA, 0.01);
+        Path bounds = new Path(FileOutputFormat.getWorkOutputPath(context), "bounds.txt");
+        try (PrintStream out = new PrintStream(bounds.getFileSystem(conf).create(bounds, true), false, "UTF-8")) {
+            out.println("favorites\t" + favorites + "\tfavorites counted in the sketches");
+            out.println("sample\t" + p + "\tshare of the users used, the counts are scaled by 1 / sample");
+            out.println("users\t" + distinct + "\t+/- " + Math.round(distinct * users.relativeError())
+                    + " (one standard error, " + String.format("%.2f%%", 100 * users.relativeError()) + ")");
+            out.println("count.min\t" + counts.getDepth() + "x" + counts.getWidth() + "\tepsilon=" + epsilon
+                    + " delta=" + delta);
+            out.println("count.error\t" + (long) Math.ceil(epsilon * favorites / p)
+                    + "\tan estimate exceeds the true count by at most this with probability " + (1 - delta));
+            if (p < 1) {
+                out.println("sample.error\tsqrt((1 - sample) / (sample * N))"
+                        + "\trelative standard error of the sampling for a count N");
+            }
+            out.println("heavy\t" + all.getHeavy() + "\tthe movies with more than " + favorites / Math.max(1, all.getHeavy())
+                    + " sketched favorites are listed (with high probability)");
+            if (all.getUnsorted() == 0) {
+                out.println("split.users\t" + (all.getTasks() - 1)
+                        + "\tat most this many users are counted twice, their ratings being in two splits");
+            } else {
+                out.println("unsorted\t" + all.getUnsorted()
+                        + "\tthe ratings are not sorted by user: the users are counted once per run of ratings");
+            }
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package app;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.SplittableCompressionCodec;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.LineRecordReader;
+
+// Batched reading of the ratings: the reader hands the mapper blocks of app.batch.size
+// ratings (default 4096) as column arrays (RatingBatch) instead of one line per map()
+// call, from ratings.csv or from the binary layout of Ingest. The reader does the
+// parsing and counts the lines in Metrics.Records; the mappers (BatchMapper) run tight
+// loops over the columns.
+// Pipeline registers the ratings read this way as the "ratings.batches" dataset. It is
+// used by the stages that read the ratings alone (replicated join and late titles).
+// Enable it with: -D app.batch=true
+public class Batches extends FileInputFormat<LongWritable, RatingBatch> {
+
+    public static final String BATCH = "app.batch";
+    public static final String SIZE = "app.batch.size";
+
+    public static boolean isEnabled(Configuration conf) {
+        return conf.getBoolean(BATCH, false);
+    }
+
+    @Override
+    public RecordReader<LongWritable, RatingBatch> createRecordReader(InputSplit split, TaskAttemptContext context) {
+        return new Reader();
+    }
+
+    @Override
+    protected boolean isSplitable(JobContext context, Path file) {
+        CompressionCodec codec = new CompressionCodecFactory(context.getConfiguration()).getCodec(file);
+        return codec == null || codec instanceof SplittableCompressionCodec;
+    }
+
+    // The key is the offset of the first rating of the batch.
+    static class Reader extends RecordReader<LongWritable, RatingBatch> {
+
+        private BinaryRatings.Reader binary;
+        private LineRecordReader lines;
+        private final CsvParser csv = new CsvParser();
+        private final LongWritable key = new LongWritable();
+        private RatingBatch batch;
+        // FileInputFormat.Counter hides the mapreduce Counter here
+        private org.apache.hadoop.mapreduce.Counter parsed;
+        private org.apache.hadoop.mapreduce.Counter skipped;
+        private org.apache.hadoop.mapreduce.Counter malformed;
+        private org.apache.hadoop.mapreduce.Counter outOfWindow;
+        private TimeWindow window;
+
+        @Override
+        public void initialize(InputSplit split, TaskAttemptContext context) throws IOException {
+            batch = new RatingBatch(context.getConfiguration().getInt(SIZE, 4096));
+            parsed = context.getCounter(Metrics.Records.PARSED);
+            skipped = context.getCounter(Metrics.Records.SKIPPED);
+            malformed = context.getCounter(Metrics.Records.MALFORMED);
+            outOfWindow = context.getCounter(Metrics.Records.OUT_OF_WINDOW);
+            window = TimeWindow.get(context.getConfiguration());
+            if (BinaryRatings.isBinary(((FileSplit) split).getPath())) {
+                binary = new BinaryRatings.Reader();
+                binary.initialize(split, context);
+            } else {
+                lines = new LineRecordReader();
+                lines.initialize(split, context);
+            }
+        }
+
+        @Override
+        public boolean nextKeyValue() throws IOException {
+            long first = binary != null ? nextBinary() : nextText();
+            if (first < 0) {
+                return false;
+            }
+            key.set(first);
+            parsed.increment(batch.size());
+            return true;
+        }
+
+        // Drop the malformed records and the ones outside the window, which are only
+        // counted.
+        private long nextBinary() throws IOException {
+            long first;
+            while ((first = binary.nextBatch(batch)) >= 0) {
+                int n = batch.size();
+                int kept = 0;
+                int late = 0;
+                for (int i = 0; i < n; i++) {
+                    if (batch.users[i] < 0 || batch.movies[i] < 0 || batch.rates[i] < 0) {
+                        continue;
+                    }
+                    if (!window.contains(batch.timestamps[i] & 0xFFFFFFFFL)) {
+                        late++;
+                        continue;
+                    }
+                    batch.users[kept] = batch.users[i];
+                    batch.movies[kept] = batch.movies[i];
+                    batch.rates[kept] = batch.rates[i];
+                    batch.timestamps[kept] = batch.timestamps[i];
+                    kept++;
+                }
+                malformed.increment(n - kept - late);
+                parsed.increment(late);
+                outOfWindow.increment(late);
+                if (kept > 0) {
+                    batch.truncate(kept);
+                    return first;
+                }
+            }
+            return -1;
+        }
+
+        private long nextText() throws IOException {
+            batch.clear();
+            long first = -1;
+            while (!batch.isFull() && lines.nextKeyValue()) {
+                LongWritable offset = lines.getCurrentKey();
+                Text line = lines.getCurrentValue();
+                if (!csv.parse(line)) {
+                    skipped.increment(1);
+                    continue;
+                }
+                // userId,movieId,rating,timestamp
+                int userId = csv.getInt(0);
+                int movieId = csv.getInt(1);
+                byte rate = csv.getRating(2);
+                if (userId < 0 || movieId < 0 || rate < 0) {
+                    (Metrics.isHeader(offset) ? skipped : malformed).increment(1);
+                    continue;
+                }
+                long timestamp = csv.getLong(3);
+                if (!window.contains(timestamp)) {
+                    parsed.increment(1);
+                    outOfWindow.increment(1);
+                    continue;
+                }
+                if (first < 0) {
+                    first = offset.get();
+                }
+                batch.add(userId, movieId, rate, (int) timestamp);
+            }
+            return first;
+        }
+
+        @Override
+        public LongWritable getCurrentKey() {
+            return key;
+        }
+
+        @Override
+        public RatingBatch getCurrentValue() {
+            return batch;
+        }
+
+        @Override
+        public float getProgress() throws IOException {
+            return binary != null ? binary.getProgress() : lines.getProgress();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (binary != null) {
+                binary.close();
+            }
+            if (lines != null) {
+                lines.close();
+            }
+        }
+    }
+}
+
+// Base of the batch mappers: map() gets a whole RatingBatch. Rows of the same user are
+// consecutive in the MovieLens files (sorted by userId), so the favorite of a user can
+// already be narrowed down inside the batch.
+abstract class BatchMapper<K, V> extends Mapper<LongWritable, RatingBatch, K, V> {
+
+    // the rows chosen by selectBest
+    protected int[] selected = new int[0];
+
+    @Override
+    public void map(LongWritable key, RatingBatch batch, Context context) throws IOException, InterruptedException {
+        if (selected.length < batch.capacity()) {
+            selected = new int[batch.capacity()];
+        }
+        mapBatch(batch, context);
+    }
+
+    protected abstract void mapBatch(RatingBatch batch, Context context) throws IOException, InterruptedException;
+
+    // Select the rows that have the best rate of their run of consecutive rows of the
+    // same user. The other rows cannot be the favorite of their user. Return the number
+    // of rows written to selected.
+    protected int selectBest(RatingBatch batch) {
+        int n = batch.size();
+        int[] users = batch.users;
+        byte[] rates = batch.rates;
+        int count = 0;
+        for (int s = 0; s < n;) {
+            int user = users[s];
+            int e = s + 1;
+            while (e < n && users[e] == user) {
+                e++;
+            }
+            int best = -1;
+            for (int i = s; i < e; i++) {
+                best = Math.max(best, rates[i]);
+            }
+            for (int i = s; i < e; i++) {
+                if (rates[i] == best) {
+                    selected[count++] = i;
+                }
+            }
+            s = e;
+        }
+        return count;
+    }
+}
+
+// Batch Join Map: like ReplicatedJoinMapper, but only writes the best rated movies of
+// each user found in the batch. The movies without a title get an empty one.
+// Input:  batches of ratings (userId, movieId, rating, timestamp)
+// Output: userId1|bestRate movieTitle
+//         ...
+class BatchJoinMapper extends BatchMapper<UserRatingKey, Text> {
+
+    private MovieDictionary movies;
+    private Counter misses;
+    private int[] index = new int[0];
+    private final UserRatingKey id = new UserRatingKey();
+    private final Text title = new Text();
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        movies = MovieDictionary.fromCache(context.getCacheFiles(), context.getConfiguration());
+        misses = context.getCounter(Metrics.Records.JOIN_MISSES);
+    }
+
+    @Override
+    protected void mapBatch(RatingBatch batch, Context context) throws IOException, InterruptedException {
+        int n = batch.size();
+        if (index.length < n) {
+            index = new int[batch.capacity()];
+        }
+        int missing = 0;
+        for (int i = 0; i < n; i++) {
+            index[i] = movies.indexOf(batch.movies[i]);
+            missing += index[i] >= 0 ? 0 : 1;
+        }
+        misses.increment(missing);
+        int count = selectBest(batch);
+        for (int j = 0; j < count; j++) {
+            int i = selected[j];
+            if (index[i] >= 0) {
+                movies.getAt(index[i], title);
+            } else {
+                title.clear();
+            }
+            id.set(batch.users[i], batch.rates[i]);
+            context.write(id, title);
+        }
+    }
+}
+
+// Batch Favorite Map: like RatingIdMapper, but only writes the best rated movies of
+// each user found in the batch.
+// Input:  batches of ratings (userId, movieId, rating, timestamp)
+// Output: userId1|bestRate movieId
+//         ...
+class BatchFavoriteIdMapper extends BatchMapper<UserRatingKey, IdWritable> {
+
+    private final UserRatingKey id = new UserRatingKey();
+    private final IdWritable movie = new IdWritable();
+
+    @Override
+    protected void mapBatch(RatingBatch batch, Context context) throws IOException, InterruptedException {
+        int count = selectBest(batch);
+        for (int j = 0; j < count; j++) {
+            int i = selected[j];
+            id.set(batch.users[i], batch.rates[i]);
+            movie.set(batch.movies[i]);
+            context.write(id, movie);
+        }
+    }
+}
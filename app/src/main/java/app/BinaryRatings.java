@@ -0,0 +1,147 @@
+package app;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+// Binary ratings files written by Ingest (*.bin): a header of 8 bytes (the magic
+// "MLR1" and the record size) followed by fixed-width RatingRecords.
+// The records all have the same size, so a split is cut on record boundaries by
+// arithmetic alone: it owns the records that start inside it. No text is parsed and
+// the files are read in large blocks (app.binary.buffer bytes, default 1 MB).
+public class BinaryRatings extends FileInputFormat<LongWritable, RatingRecord> {
+
+    public static final String EXTENSION = ".bin";
+    public static final String BUFFER = "app.binary.buffer";
+    static final byte[] MAGIC = { 'M', 'L', 'R', '1' };
+    static final int HEADER = 8;
+
+    public static boolean isBinary(Path p) {
+        return p.getName().endsWith(EXTENSION);
+    }
+
+    @Override
+    public RecordReader<LongWritable, RatingRecord> createRecordReader(InputSplit split, TaskAttemptContext context) {
+        return new Reader();
+    }
+
+    // The key is the offset of the record in the file, like TextInputFormat.
+    static class Reader extends RecordReader<LongWritable, RatingRecord> {
+
+        private FSDataInputStream in;
+        private long first;
+        private long pos;
+        private long end;
+        private byte[] buf;
+        private int bufPos;
+        private int bufLen;
+        private final LongWritable key = new LongWritable();
+        private final RatingRecord value = new RatingRecord();
+
+        @Override
+        public void initialize(InputSplit genericSplit, TaskAttemptContext context) throws IOException {
+            FileSplit split = (FileSplit) genericSplit;
+            Configuration conf = context.getConfiguration();
+            Path file = split.getPath();
+            FileSystem fs = file.getFileSystem(conf);
+            long length = fs.getFileStatus(file).getLen();
+            in = fs.open(file);
+            byte[] header = new byte[HEADER];
+            in.readFully(0, header);
+            if (!Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC)
+                    || WritableComparator.readInt(header, MAGIC.length) != RatingRecord.SIZE) {
+                throw new IOException(file + " is not a binary ratings file");
+            }
+            if ((length - HEADER) % RatingRecord.SIZE != 0) {
+                throw new IOException(file + " is truncated");
+            }
+            first = align(split.getStart());
+            end = Math.min(length, align(split.getStart() + split.getLength()));
+            pos = first;
+            int records = Math.max(1, conf.getInt(BUFFER, 1 << 20) / RatingRecord.SIZE);
+            buf = new byte[records * RatingRecord.SIZE];
+            in.seek(pos);
+        }
+
+        // The offset of the first record starting at or after off.
+        static long align(long off) {
+            if (off <= HEADER) {
+                return HEADER;
+            }
+            return HEADER + (off - HEADER + RatingRecord.SIZE - 1) / RatingRecord.SIZE * RatingRecord.SIZE;
+        }
+
+        @Override
+        public boolean nextKeyValue() throws IOException {
+            if (pos >= end) {
+                return false;
+            }
+            if (bufPos == bufLen) {
+                fill();
+            }
+            key.set(pos);
+            value.set(buf, bufPos);
+            bufPos += RatingRecord.SIZE;
+            pos += RatingRecord.SIZE;
+            return true;
+        }
+
+        // Fill the batch with the next records, decoded straight from the buffer.
+        // Return the offset of the first one, or -1 at the end of the split.
+        long nextBatch(RatingBatch batch) throws IOException {
+            batch.clear();
+            long start = pos;
+            while (pos < end && !batch.isFull()) {
+                if (bufPos == bufLen) {
+                    fill();
+                }
+                int n = Math.min((bufLen - bufPos) / RatingRecord.SIZE, batch.capacity() - batch.size());
+                for (int i = 0; i < n; i++, bufPos += RatingRecord.SIZE) {
+                    batch.add(WritableComparator.readInt(buf, bufPos), WritableComparator.readInt(buf, bufPos + 4),
+                            buf[bufPos + 8], WritableComparator.readInt(buf, bufPos + 9));
+                }
+                pos += (long) n * RatingRecord.SIZE;
+            }
+            return batch.size() > 0 ? start : -1;
+        }
+
+        private void fill() throws IOException {
+            bufLen = (int) Math.min(buf.length, end - pos);
+            in.readFully(buf, 0, bufLen);
+            bufPos = 0;
+        }
+
+        @Override
+        public LongWritable getCurrentKey() {
+            return key;
+        }
+
+        @Override
+        public RatingRecord getCurrentValue() {
+            return value;
+        }
+
+        @Override
+        public float getProgress() {
+            return end == first ? 1f : (float) (pos - first) / (end - first);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (in != null) {
+                in.close();
+            }
+        }
+    }
+}
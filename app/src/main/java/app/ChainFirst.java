@@ -0,0 +1,459 @@
+package app;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.VIntWritable;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+// Objective: find the frequency of the highest rated movie per userID.
+// Solution: use a chain of Map/Reduce jobs.
+//-----------------------------------------------------------------------------------
+// Parse the lines of movies.csv and ratings.csv for a reduce-side join: each movie
+// or rating becomes a JoinValue of its movieId, written by write().
+abstract class JoinMapperBase<K> extends Mapper<Object, Text, K, JoinValue> {
+
+    private final JoinValue content = new JoinValue();
+    private final CsvParser csv = new CsvParser();
+    private final Text title = new Text();
+    private boolean movies;
+    private Counter parsed;
+    private Counter skipped;
+    private Counter malformed;
+    private Counter outOfWindow;
+    private TimeWindow window;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        // a split only contains lines of one file
+        movies = ((FileSplit) context.getInputSplit()).getPath().getName().contains("movies");
+        parsed = context.getCounter(Metrics.Records.PARSED);
+        skipped = context.getCounter(Metrics.Records.SKIPPED);
+        malformed = context.getCounter(Metrics.Records.MALFORMED);
+        outOfWindow = context.getCounter(Metrics.Records.OUT_OF_WINDOW);
+        window = TimeWindow.get(context.getConfiguration());
+    }
+
+    @Override
+    public void map(Object key, Text value, Context context) throws IOException, InterruptedException {
+        if (!csv.parse(value)) {
+            skipped.increment(1);
+            return;
+        }
+        int movieId;
+        if (movies) {
+            // movieId,title,genres (the header has no numeric movieId)
+            movieId = csv.getInt(0);
+            if (movieId < 0 || csv.fields() < 2) {
+                skip(key);
+                return;
+            }
+            csv.getMovieTitle(title);
+            content.setTitle(title);
+        } else {
+            // userId,movieId,rating,timestamp
+            int userId = csv.getInt(0);
+            movieId = csv.getInt(1);
+            byte rate = csv.getRating(2);
+            if (userId < 0 || movieId < 0 || rate < 0) {
+                skip(key);
+                return;
+            }
+            content.setRating(userId, rate);
+            if (!window.isAll() && !window.contains(csv.getLong(3))) {
+                parsed.increment(1);
+                outOfWindow.increment(1);
+                return;
+            }
+        }
+        parsed.increment(1);
+        write(movieId, content, context);
+    }
+
+    private void skip(Object key) {
+        (Metrics.isHeader(key) ? skipped : malformed).increment(1);
+    }
+
+    protected abstract void write(int movieId, JoinValue value, Context context) throws IOException, InterruptedException;
+}
+
+// First Map: join the files, for each movieId get the title and the rating of a user.
+// Input:  movie.csv and rating.csv files
+// Output: movieId JoinValue(TITLE, movieTitle)
+//         movieId JoinValue(RATING, userId, userRate)
+//         movieId JoinValue(RATING, userId, userRate)
+//         ...
+class MovieMapper extends JoinMapperBase<IdWritable> {
+
+    private final IdWritable id = new IdWritable();
+
+    @Override
+    protected void write(int movieId, JoinValue value, Context context) throws IOException, InterruptedException {
+        id.set(movieId);
+        context.write(id, value);
+    }
+}
+
+// First Reduce: compress in a single record all the ratings of a movie.
+// Input:  movieId JoinValue(TITLE, movieTitle)
+//         movieId JoinValue(RATING, userId, userRate)
+//         movieId JoinValue(RATING, userId, userRate)
+//         ...
+// Output: movieId MovieRatings(movieTitle, [(userId, userRate), (userId, userRate), ...])
+// A movie without a title keeps its ratings with an empty title; they are counted as
+// join misses.
+class FirstReducer extends Reducer<IdWritable, JoinValue, IdWritable, MovieRatings> {
+
+    private final MovieRatings ret = new MovieRatings();
+    private GroupCounter groups;
+    private Counter misses;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        groups = new GroupCounter(context);
+        misses = context.getCounter(Metrics.Records.JOIN_MISSES);
+    }
+
+    @Override
+    public void reduce(IdWritable key, Iterable<JoinValue> values, Context context) throws IOException, InterruptedException {
+        ret.clear();
+        boolean titled = false;
+        for (JoinValue v : values) {
+            if (v.isTitle()) {
+                if (!titled) {
+                    ret.setTitle(v.getTitle());
+                    titled = true;
+                }
+            } else {
+                ret.add(v.getUserId(), v.getRate());
+            }
+        }
+        groups.add(ret.size() + (titled ? 1 : 0));
+        if (!titled) {
+            misses.increment(ret.size());
+        }
+        context.write(key, ret);
+    }
+}
+
+// Second Map: for each movie get the ratings, keyed by (userId, userRate) so that
+// the shuffle sorts the movies of each user from the best rated to the worst.
+// Input:  movieId movieTitle=userId|userRate,userId|userRate,...
+// Output: userId1|userRate movieTitle
+//         userId1|userRate movieTitle
+//         userId2|userRate movieTitle
+//         userId2|userRate movieTitle
+//         ...
+//         userIdN|userRate movieTitle
+class UserMapper extends Mapper<Object, MovieRatings, UserRatingKey, Text> {
+
+    private final UserRatingKey id = new UserRatingKey();
+
+    @Override
+    public void map(Object key, MovieRatings value, Context context) throws IOException, InterruptedException {
+        for (int i = 0; i < value.size(); i++) {
+            id.set(value.getUser(i), value.getRate(i));
+            context.write(id, value.getTitle());
+        }
+    }
+}
+
+// Second Reduce: chose one random best rated movie per user.
+// The values are grouped by userId and sorted by rate descending (secondary sort),
+// so the first one is a best rated movie and the rest of the group is not read.
+// Input:  userId1|userRate movieTitle
+//         userId1|userRate movieTitle
+//         userId2|userRate movieTitle
+//         userId2|userRate movieTitle
+//         ...
+//         userIdN|userRate movieTitle
+// Output: userId1 movieTitle1
+//         userId2 movieTitle2
+//         userId3 movieTitle2
+//         ...
+//         userIdN movieTitleN
+class SecondReducer extends Reducer<UserRatingKey, Text, IdWritable, Text> {
+
+    private final IdWritable id = new IdWritable();
+
+    @Override
+    public void reduce(UserRatingKey key, Iterable<Text> values, Context context) throws IOException, InterruptedException {
+        Text title = values.iterator().next();
+        id.set(key.getUserId());
+        context.write(id, title);
+    }
+}
+
+// Third Map: emit a count of 1 for the favorite movie of each user.
+// With -D app.freq.inmapper=true the counts are aggregated in the mapper and
+// flushed when app.freq.inmapper.max distinct titles are held (and at the end).
+// Input:  userId1 movieTitle1
+//         userId2 movieTitle2
+//         userId3 movieTitle2
+//         ...
+//         userIdN movieTitleN
+// Output: movieTitle1 1
+//         movieTitle2 1
+//         movieTitle2 1
+//         ...
+//         movieTitleN 1
+class FreqMapper extends Mapper<IdWritable, Text, Text, VIntWritable> {
+
+    public static final String IN_MAPPER = "app.freq.inmapper";
+    public static final String IN_MAPPER_MAX = "app.freq.inmapper.max";
+
+    private final static VIntWritable one = new VIntWritable(1);
+    private final VIntWritable count = new VIntWritable();
+    private HashMap<Text, int[]> counts;
+    private int max;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        if (conf.getBoolean(IN_MAPPER, false)) {
+            counts = new HashMap<>();
+            max = conf.getInt(IN_MAPPER_MAX, 100000);
+        }
+    }
+
+    @Override
+    public void map(IdWritable key, Text value, Context context) throws IOException, InterruptedException {
+        if (counts == null) {
+            context.write(value, one);
+            return;
+        }
+        int[] c = counts.get(value);
+        if (c != null) {
+            c[0]++;
+            return;
+        }
+        counts.put(new Text(value), new int[] { 1 });
+        if (counts.size() >= max) {
+            flush(context);
+        }
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        if (counts != null) {
+            flush(context);
+        }
+    }
+
+    private void flush(Context context) throws IOException, InterruptedException {
+        for (Map.Entry<Text, int[]> entry : counts.entrySet()) {
+            count.set(entry.getValue()[0]);
+            context.write(entry.getKey(), count);
+        }
+        counts.clear();
+    }
+}
+
+// Third Combine/Reduce: sum the counts of each movie.
+// Used as a combiner, so that each map task sends one record per distinct movie.
+// Input:  movieTitle1 1
+//         movieTitle2 1
+//         movieTitle2 1
+// Output: movieTitle1 1
+//         movieTitle2 2
+class CountCombiner<K> extends Reducer<K, VIntWritable, K, VIntWritable> {
+
+    private final VIntWritable count = new VIntWritable();
+
+    @Override
+    public void reduce(K key, Iterable<VIntWritable> values, Context context) throws IOException, InterruptedException {
+        int sum = 0;
+        for (VIntWritable v : values) {
+            sum += v.get();
+        }
+        count.set(sum);
+        context.write(key, count);
+    }
+}
+
+// Third Reduce: Compute the frequency
+// Input:  movieTitle1 1
+//         movieTitle2 1
+//         movieTitle2 1
+//         ...
+//         movieTitleN 1
+// Output: 1 movieTitle1
+//         2 movieTitle2
+//         2 movieTitle3
+//         ...
+//         N movieTitleN
+class ThirdReducer extends Reducer<Text, VIntWritable, IntWritable, Text> {
+
+    private final IntWritable num = new IntWritable();
+
+    @Override
+    public void reduce(Text key, Iterable<VIntWritable> values, Context context) throws IOException, InterruptedException {
+        int sum = 0;
+        for (VIntWritable v : values) {
+            sum += v.get();
+        }
+        num.set(sum);
+        context.write(num, key);
+    }
+}
+
+// Fourth Map: just pass the data (use IntWritable for evaluating entries in ascending order)
+// Input:  1 movieTitle1
+//         2 movieTitle2
+//         2 movieTitle3
+//         ...
+//         N movieTitleN
+// Output: 1 movieTitle1
+//         2 movieTitle2
+//         2 movieTitle3
+//         ...
+//         N movieTitleN
+class GroupMapper extends Mapper<IntWritable, Text, IntWritable, Text> {
+
+    @Override
+    public void map(IntWritable key, Text value, Context context) throws IOException, InterruptedException {
+        context.write(key, value);
+    }
+}
+
+// Fourth Reduce: Concatenate every title (use IntWritable for evaluating entries in ascending order)
+// Input:  1 movieTitle1
+//         2 movieTitle2
+//         2 movieTitle3
+//         ...
+//         N movieTitleN
+// Output: 1 movieTitle1
+//         2 movieTitle2
+//         ...
+//         N movieTitleN
+class FourthReducer extends Reducer<IntWritable, Text, Text, Text> {
+
+    private final Text id = new Text();
+    private final Text ret = new Text();
+    // the titles are appended as UTF-8 bytes in a buffer that grows geometrically
+    private final DataOutputBuffer list = new DataOutputBuffer();
+
+    @Override
+    public void reduce(IntWritable key, Iterable<Text> values, Context context) throws IOException, InterruptedException {
+        list.reset();
+        for (Text t : values) {
+            if (list.getLength() > 0) {
+                list.write(' ');
+            }
+            list.write(t.getBytes(), 0, t.getLength());
+        }
+        id.set(Integer.toString(key.get()));
+        ret.set(list.getData(), 0, list.getLength());
+        context.write(id, ret);
+    }
+}
+
+public class ChainFirst extends Configured implements Tool {
+
+    static Configuration cf;
+
+    @Override
+    public int run(String args[]) throws IOException, InterruptedException, ClassNotFoundException {
+        cf = getConf();
+        Intermediate.configure(cf);
+        Pipeline pipeline = new Pipeline(cf, ChainFirst.class).sources(new Path(args[0]));
+        if (Approximate.isEnabled(cf)) {
+            // estimate the frequencies with sketches in a single job
+            Approximate.sketch(pipeline, "Sketch", new Path(args[1]));
+            return pipeline.run();
+        }
+        if (LateTitles.isEnabled(cf)) {
+            // work on movieIds, the titles are only looked up by Job 4
+            LateTitles.favorites(pipeline, cf, "Job 2", "intermediate_output2");
+            if (TopK.isEnabled(cf)) {
+                // each reducer only writes its K most frequent movies, merged by the driver
+                pipeline.stage("Job 3")
+                        .read("intermediate_output2")
+                        .map(FreqIdMapper.class)
+                        .combine(CountCombiner.class)
+                        .reduce(TopIdReducer.class)
+                        .write("intermediate_output3");
+                return TopK.run(pipeline, cf, "intermediate_output3", new Path(args[1]));
+            }
+            pipeline.stage("Job 3")
+                    .read("intermediate_output2")
+                    .map(FreqIdMapper.class)
+                    .combine(CountCombiner.class)
+                    .reduce(CountIdReducer.class)
+                    .write("intermediate_output3");
+            pipeline.stage("Job 4")
+                    .read("intermediate_output3")
+                    .cache(Pipeline.MOVIES)
+                    .reduce(TitleListReducer.class)
+                    .totalOrder()
+                    .writeText(new Path(args[1]));
+            return pipeline.run();
+        }
+        Stage job2;
+        if (ReplicatedJoin.isEnabled(cf) && Batches.isEnabled(cf)) {
+            // join the movies in the mapper on batches of ratings
+            job2 = pipeline.stage("Job 2")
+                    .read(Pipeline.RATING_BATCHES)
+                    .cache(Pipeline.MOVIES)
+                    .map(BatchJoinMapper.class);
+        } else if (ReplicatedJoin.isEnabled(cf)) {
+            // join the movies in the mapper, Job 1 is not needed
+            job2 = pipeline.stage("Job 2")
+                    .read(Pipeline.RATINGS)
+                    .cache(Pipeline.MOVIES)
+                    .map(ReplicatedJoinMapper.class);
+        } else if (SkewJoin.isEnabled(cf)) {
+            // stream the join per rating, the hot movies are salted over the reducers
+            SkewJoin.join(pipeline, cf, "Job 1", StreamUserReducer.class, "intermediate_output1");
+            job2 = pipeline.stage("Job 2")
+                    .read("intermediate_output1");
+        } else {
+            pipeline.stage("Job 1")
+                    .read(Pipeline.MOVIES, Pipeline.RATINGS)
+                    .map(MovieMapper.class)
+                    .reduce(FirstReducer.class)
+                    .write("intermediate_output1");
+            job2 = pipeline.stage("Job 2")
+                    .read("intermediate_output1")
+                    .map(UserMapper.class);
+        }
+        job2.partition(UserRatingKey.UserPartitioner.class)
+                .group(UserRatingKey.GroupComparator.class)
+                .reduce(SecondReducer.class)
+                .write("intermediate_output2");
+        Stage job3 = pipeline.stage("Job 3")
+                .read("intermediate_output2")
+                .map(FreqMapper.class)
+                .combine(CountCombiner.class);
+        if (TopK.isEnabled(cf)) {
+            // each reducer only writes its K most frequent titles, merged by the driver
+            job3.reduce(TopTitleReducer.class).write("intermediate_output3");
+            return TopK.run(pipeline, cf, "intermediate_output3", new Path(args[1]));
+        }
+        job3.reduce(ThirdReducer.class).write("intermediate_output3");
+        pipeline.stage("Job 4")
+                .read("intermediate_output3")
+                .map(GroupMapper.class)
+                .reduce(FourthReducer.class)
+                .totalOrder()
+                .writeText(new Path(args[1]));
+        return pipeline.run();
+    }
+
+    public static void main(String args[]) throws Exception {
+        int res = ToolRunner.run(cf, new ChainFirst(), args);
+        System.exit(res);
+    }
+}
@@ -0,0 +1,339 @@
+package app;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.VIntWritable;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Partitioner;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+// Objective: find the frequency of the highest rated movie per userID, overall, per
+// genre and per release year, in a single run.
+// Solution: every rating is tagged with each group its movie belongs to (all, one per
+// genre, its year), and the three jobs of ChainFirst run once on the tagged keys:
+// favorite per (group, user), count per (group, movie), then one ascending frequency
+// table per group, written with MultipleOutputs under <output>/all/,
+// <output>/genre/<genre>/ and <output>/year/<year>/.
+// The groupings are chosen with -D app.multi.groups=all,genre,year (the default).
+// The movies are only read from the distributed cache, so it runs on the CSV and on
+// the binary input, with the time window of TimeWindow.
+//-----------------------------------------------------------------------------------
+// The groups of each movie, numbered 0 for all, GENRES + i for the i-th genre in
+// alphabetical order and YEARS + year for the release year. Every task builds the
+// same numbers from the same movies file.
+class MovieGroups {
+
+    public static final String GROUPS = "app.multi.groups";
+    static final int ALL = 0;
+    static final int GENRES = 1;
+    static final int YEARS = 1000;
+
+    private final String[] genreNames;
+    // the groups of the movie at index i of the dictionary (the position of its id,
+    // the one indexOf returns) are values[starts[i]..starts[i+1]]
+    private final int[] starts;
+    private int[] values;
+
+    MovieGroups(MovieDictionary movies, Configuration conf) {
+        // the positions must be the ones of the lookups of the mappers
+        movies.sort();
+        List<String> kinds = Arrays.asList(conf.getTrimmedStrings(GROUPS, "all", "genre", "year"));
+        boolean all = kinds.contains("all");
+        boolean byGenre = kinds.contains("genre");
+        boolean byYear = kinds.contains("year");
+        if (!all && !byGenre && !byYear) {
+            throw new IllegalArgumentException(GROUPS + " must list some of all, genre, year");
+        }
+        Text genres = new Text();
+        Text title = new Text();
+        TreeSet<String> names = new TreeSet<>();
+        for (int i = 0; i < movies.size(); i++) {
+            movies.getGenresAt(i, genres);
+            for (String g : genres.toString().split("\\|")) {
+                if (!g.isEmpty()) {
+                    names.add(g);
+                }
+            }
+        }
+        if (names.size() >= YEARS - GENRES) {
+            throw new IllegalStateException("Too many genres: " + names.size());
+        }
+        genreNames = names.toArray(new String[0]);
+
+        starts = new int[movies.size() + 1];
+        values = new int[movies.size() * 4];
+        int n = 0;
+        for (int i = 0; i < movies.size(); i++) {
+            movies.getGenresAt(i, genres);
+            String[] movieGenres = byGenre ? genres.toString().split("\\|") : new String[0];
+            if (values.length < n + movieGenres.length + 2) {
+                values = Arrays.copyOf(values, Math.max(values.length * 2, n + movieGenres.length + 2));
+            }
+            if (all) {
+                values[n++] = ALL;
+            }
+            if (byGenre) {
+                for (String g : movieGenres) {
+                    int k = Arrays.binarySearch(genreNames, g);
+                    if (k >= 0) {
+                        values[n++] = GENRES + k;
+                    }
+                }
+            }
+            if (byYear) {
+                movies.getAt(i, title);
+                int year = releaseYear(title);
+                if (year > 0) {
+                    values[n++] = YEARS + year;
+                }
+            }
+            starts[i + 1] = n;
+        }
+    }
+
+    public int start(int index) {
+        return starts[index];
+    }
+
+    public int end(int index) {
+        return starts[index + 1];
+    }
+
+    public int get(int k) {
+        return values[k];
+    }
+
+    // The directory of the table of a group: all, genre/<name> or year/<year>.
+    public String name(int group) {
+        if (group == ALL) {
+            return "all";
+        }
+        if (group < YEARS) {
+            return "genre/" + genreNames[group - GENRES].replaceAll("[^A-Za-z0-9-]", "_");
+        }
+        return "year/" + (group - YEARS);
+    }
+
+    // The year in parentheses at the end of a title ("Toy Story (1995)"), or -1.
+    static int releaseYear(Text title) {
+        byte[] b = title.getBytes();
+        int e = title.getLength();
+        while (e > 0 && (b[e - 1] == ' ' || b[e - 1] == '"')) {
+            e--;
+        }
+        if (e < 6 || b[e - 1] != ')' || b[e - 6] != '(') {
+            return -1;
+        }
+        int year = 0;
+        for (int i = e - 5; i < e - 1; i++) {
+            if (b[i] < '0' || b[i] > '9') {
+                return -1;
+            }
+            year = year * 10 + b[i] - '0';
+        }
+        return year;
+    }
+}
+
+// Group Map: tag each rating with every group of its movie.
+// Input:  ratings.csv (userId,movieId,rating,timestamp) or binary ratings
+// Output: 0#userId1|userRate movieId       (all)
+//         7#userId1|userRate movieId       (genre 7)
+//         2995#userId1|userRate movieId    (year 1995)
+//         ...
+class GroupRatingMapper extends Mapper<Object, Writable, GroupUserKey, IdWritable> {
+
+    private MovieDictionary movies;
+    private MovieGroups groups;
+    private RatingParser ratings;
+    private Counter misses;
+    private final GroupUserKey key = new GroupUserKey();
+    private final IdWritable movie = new IdWritable();
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        movies = MovieDictionary.fromCache(context.getCacheFiles(), context.getConfiguration());
+        groups = new MovieGroups(movies, context.getConfiguration());
+        ratings = new RatingParser(context);
+        misses = context.getCounter(Metrics.Records.JOIN_MISSES);
+    }
+
+    @Override
+    public void map(Object offset, Writable value, Context context) throws IOException, InterruptedException {
+        if (!ratings.parse(offset, value)) {
+            return;
+        }
+        int i = movies.indexOf(ratings.getMovieId());
+        if (i < 0) {
+            misses.increment(1);
+            return;
+        }
+        movie.set(ratings.getMovieId());
+        for (int k = groups.start(i); k < groups.end(i); k++) {
+            key.set(groups.get(k), ratings.getUserId(), ratings.getRate());
+            context.write(key, movie);
+        }
+    }
+}
+
+// Group Favorite Reduce: chose one random best rated movie per user in each group
+// (like SecondReducer).
+// Input:  group#userId1|userRate movieId
+//         ...
+// Output: group|movieId 1
+//         ...
+class GroupFavoriteReducer extends Reducer<GroupUserKey, IdWritable, LongWritable, VIntWritable> {
+
+    private final static VIntWritable one = new VIntWritable(1);
+    private final LongWritable groupMovie = new LongWritable();
+
+    @Override
+    public void reduce(GroupUserKey key, Iterable<IdWritable> values, Context context) throws IOException, InterruptedException {
+        IdWritable movie = values.iterator().next();
+        groupMovie.set((long) key.getGroup() << 32 | movie.get());
+        context.write(groupMovie, one);
+    }
+}
+
+// Group Count Reduce: compute the frequency of each movie in each group.
+// Input:  group|movieId count
+//         ...
+// Output: group|N movieId
+//         ...
+class GroupCountReducer extends Reducer<LongWritable, VIntWritable, LongWritable, IdWritable> {
+
+    private final LongWritable groupCount = new LongWritable();
+    private final IdWritable movie = new IdWritable();
+
+    @Override
+    public void reduce(LongWritable key, Iterable<VIntWritable> values, Context context) throws IOException, InterruptedException {
+        int sum = 0;
+        for (VIntWritable v : values) {
+            sum += v.get();
+        }
+        groupCount.set(key.get() & 0xFFFFFFFF00000000L | sum);
+        movie.set((int) key.get());
+        context.write(groupCount, movie);
+    }
+}
+
+// Send all the frequencies of a group to the same reducer, so that its table is a
+// single sorted file.
+class GroupPartitioner<V> extends Partitioner<LongWritable, V> {
+
+    @Override
+    public int getPartition(LongWritable key, V value, int numPartitions) {
+        return (int) (key.get() >>> 32) % numPartitions;
+    }
+}
+
+// Group Table Reduce: resolve the titles, concatenate them and write each group to
+// its own table (like TitleListReducer).
+// Input:  group|N movieId
+//         ...
+// Output: <group>/part-r-NNNNN: N movieTitle1 movieTitle2 ...
+class GroupTableReducer extends Reducer<LongWritable, IdWritable, IntWritable, Text> {
+
+    private MovieDictionary movies;
+    private MovieGroups groups;
+    private MultipleOutputs<IntWritable, Text> outputs;
+    private Counter misses;
+    private final IntWritable num = new IntWritable();
+    private final Text title = new Text();
+    private final Text ret = new Text();
+    private final DataOutputBuffer list = new DataOutputBuffer();
+    private int group = -1;
+    private String path;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        movies = MovieDictionary.fromCache(context.getCacheFiles(), context.getConfiguration());
+        groups = new MovieGroups(movies, context.getConfiguration());
+        outputs = new MultipleOutputs<>(context);
+        misses = context.getCounter(Metrics.Records.JOIN_MISSES);
+    }
+
+    @Override
+    public void reduce(LongWritable key, Iterable<IdWritable> values, Context context) throws IOException, InterruptedException {
+        int g = (int) (key.get() >>> 32);
+        if (g != group) {
+            group = g;
+            path = groups.name(g) + "/part";
+        }
+        list.reset();
+        for (IdWritable m : values) {
+            if (!movies.get(m.get(), title)) {
+                misses.increment(1);
+                continue;
+            }
+            if (list.getLength() > 0) {
+                list.write(' ');
+            }
+            list.write(title.getBytes(), 0, title.getLength());
+        }
+        if (list.getLength() == 0) {
+            return;
+        }
+        num.set((int) key.get());
+        ret.set(list.getData(), 0, list.getLength());
+        outputs.write(num, ret, path);
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        outputs.close();
+    }
+}
+
+public class ChainMulti extends Configured implements Tool {
+
+    static Configuration cf;
+
+    @Override
+    public int run(String args[]) throws IOException, InterruptedException, ClassNotFoundException {
+        cf = getConf();
+        Intermediate.configure(cf);
+        Pipeline pipeline = new Pipeline(cf, ChainMulti.class).sources(new Path(args[0]));
+        pipeline.stage("Job 1")
+                .read(Pipeline.RATINGS)
+                .cache(Pipeline.MOVIES)
+                .map(GroupRatingMapper.class)
+                .partition(GroupUserKey.GroupUserPartitioner.class)
+                .group(GroupUserKey.GroupComparator.class)
+                .reduce(GroupFavoriteReducer.class)
+                .write("multi_output1");
+        pipeline.stage("Job 2")
+                .read("multi_output1")
+                .combine(CountCombiner.class)
+                .reduce(GroupCountReducer.class)
+                .write("multi_output2");
+        pipeline.stage("Job 3")
+                .read("multi_output2")
+                .cache(Pipeline.MOVIES)
+                .partition(GroupPartitioner.class)
+                .reduce(GroupTableReducer.class)
+                .lazyOutput()
+                .writeText(new Path(args[1]));
+        return pipeline.run();
+    }
+
+    public static void main(String args[]) throws Exception {
+        int res = ToolRunner.run(cf, new ChainMulti(), args);
+        System.exit(res);
+    }
+}
@@ -0,0 +1,277 @@
+package app;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+
+// Third Map: format each line to keep only the title
+// Input:  userId1 movieTitle1,rate
+//         userId2 movieTitle2,rate
+//         userId3 movieTitle2,rate
+//         ...
+//         userIdN movieTitleN
+// Output: 1 movieTitle1
+//         1 movieTitle2
+//         1 movieTitle2
+//         ...
+//         1 movieTitleN
+class SimpleMap extends Mapper<IdWritable, Text, Text, Text> {
+
+    private final static Text one = new Text("1");
+
+    @Override
+    public void map(IdWritable key, Text value, Context context) throws IOException, InterruptedException {
+        context.write(one, value);
+    }
+}
+
+// Third Reduce:  Show the frequency in ascending order
+// Input:  1 movieTitle1
+//         1 movieTitle2
+//         1 movieTitle2
+//         ...
+//         1 movieTitleN
+// Output: N1 movieTitle1
+//         N2 movieTitle2
+//         ...
+//         N movieTitleN
+// With app.spill.memory the counts are spilled to runs sorted by title, then merged and
+// sorted again by frequency on the local disk (see Spill).
+class AscendReduce extends Reducer<Text, Text, IntWritable, Text> {
+
+    private static final byte[] SPACE = { ' ' };
+
+    // the frequency of each title: counts[t] for the title t of titles
+    final TitleDictionary titles = new TitleDictionary();
+    int[] counts = new int[1024];
+    private final IntWritable num = new IntWritable();
+    private final Text title = new Text();
+    private final Text content = new Text();
+    private final DataOutputBuffer list = new DataOutputBuffer();
+    // with a memory budget (app.spill.memory): the counts are spilled as (title, count)
+    // runs when the titles and their counts pass half the budget
+    private SpillSorter spilled;
+    private long budget = Long.MAX_VALUE;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        if (Spill.isEnabled(conf)) {
+            budget = Spill.getMemory(conf) / 2;
+            spilled = new SpillSorter(context, "titles", budget);
+        }
+    }
+
+    @Override
+    public void reduce(Text key, Iterable<Text> values, Context context) throws IOException, InterruptedException {
+        for (Text v : values) {
+            int t = titles.intern(v);
+            if (t == counts.length) {
+                counts = Arrays.copyOf(counts, t * 2);
+            }
+            if (counts[t]++ == 0 && titles.memory() + (long) titles.size() * Integer.BYTES > budget) {
+                spillTitles();
+            }
+        }
+
+        if (spilled != null && !spilled.isEmpty()) {
+            spillTitles();
+            writeSpilled(context);
+            return;
+        }
+
+        // sort the titles by frequency (only the K most frequent ones in top-K mode)
+        Configuration conf = context.getConfiguration();
+        long[] order = TopK.isEnabled(conf) ? TopK.select(counts, conf) : FavoriteTable.ascending(counts);
+        for (int i = 0; i < order.length;) {
+            int f = (int) (order[i] >>> 32);
+            list.reset();
+            for (; i < order.length && (int) (order[i] >>> 32) == f; i++) {
+                if (list.getLength() > 0) {
+                    list.write(' ');
+                }
+                titles.write((int) order[i], list);
+            }
+            num.set(f);
+            content.set(list.getData(), 0, list.getLength());
+            context.write(num, content);
+        }
+    }
+
+    // Move the counts to the sorter, under the UTF-8 bytes of the titles.
+    private void spillTitles() throws IOException {
+        for (int t = 0; t < titles.size(); t++) {
+            titles.get(t, title);
+            spilled.add(0, title.getBytes(), 0, title.getLength(), counts[t]);
+        }
+        titles.clear();
+        Arrays.fill(counts, 0);
+    }
+
+    // Merge the spilled counts of each title, then sort the titles by frequency with a
+    // second sorter (or keep the K most frequent ones in top-K mode).
+    private void writeSpilled(Context context) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        try (SpillSorter.Cursor titles = spilled.merge()) {
+            if (TopK.isEnabled(conf)) {
+                writeTop(titles, context);
+                return;
+            }
+            try (SpillSorter byCount = new SpillSorter(context, "frequencies", budget)) {
+                while (titles.next()) {
+                    byCount.add(titles.getCount(), titles.getData(), 0, titles.getLength(), 1);
+                }
+                try (SpillSorter.Cursor lines = byCount.merge()) {
+                    boolean more = lines.next();
+                    while (more) {
+                        long f = lines.getKey();
+                        content.clear();
+                        do {
+                            if (content.getLength() > 0) {
+                                content.append(SPACE, 0, 1);
+                            }
+                            content.append(lines.getData(), 0, lines.getLength());
+                            more = lines.next();
+                        } while (more && lines.getKey() == f);
+                        num.set((int) f);
+                        context.write(num, content);
+                    }
+                }
+            }
+        }
+    }
+
+    // Keep the K most frequent of the merged titles in a bounded heap, like
+    // TopTitleReducer, and write them.
+    private void writeTop(SpillSorter.Cursor titles, Context context) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        int k = TopK.get(conf);
+        TopKHeap top = new TopKHeap(k);
+        // the titles of the heap entries; one more slot holds the title being offered
+        Text[] slots = new Text[k + 1];
+        for (int i = 0; i <= k; i++) {
+            slots[i] = new Text();
+        }
+        int free = 0;
+        while (titles.next()) {
+            slots[free].set(titles.getData(), 0, titles.getLength());
+            long out = top.offer(titles.getCount() << 32 | free);
+            free = out < 0 ? top.size() : (int) out;
+        }
+        long[] order = top.sorted(TopK.isDescending(conf));
+        for (int i = 0; i < order.length;) {
+            int f = (int) (order[i] >>> 32);
+            content.clear();
+            for (; i < order.length && (int) (order[i] >>> 32) == f; i++) {
+                if (content.getLength() > 0) {
+                    content.append(SPACE, 0, 1);
+                }
+                Text t = slots[(int) order[i]];
+                content.append(t.getBytes(), 0, t.getLength());
+            }
+            num.set(f);
+            context.write(num, content);
+        }
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        if (spilled != null) {
+            spilled.close();
+        }
+    }
+}
+
+public class ChainSec extends Configured implements Tool {
+
+    static Configuration cf;
+
+    @Override
+    public int run(String args[]) throws IOException, InterruptedException, ClassNotFoundException {
+        cf = getConf();
+        Intermediate.configure(cf);
+        Pipeline pipeline = new Pipeline(cf, ChainSec.class).sources(new Path(args[0]));
+        if (Approximate.isEnabled(cf)) {
+            // estimate the frequencies with sketches in a single job
+            Approximate.sketch(pipeline, "Sketch", new Path(args[1]));
+            return pipeline.run();
+        }
+        Path p = new Path(args[1]);
+        if (LateTitles.isEnabled(cf)) {
+            // work on movieIds, the titles are only looked up by Job 3
+            LateTitles.favorites(pipeline, cf, "Job 2", "intermediate_output2");
+            pipeline.stage("Job 3")
+                    .read("intermediate_output2")
+                    .cache(Pipeline.MOVIES)
+                    .map(SimpleIdMap.class)
+                    .reduce(AscendIdReduce.class)
+                    .writeText(p);
+            return pipeline.run();
+        }
+        Stage job2;
+        if (ReplicatedJoin.isEnabled(cf) && Batches.isEnabled(cf)) {
+            // join the movies in the mapper on batches of ratings
+            job2 = pipeline.stage("Job 2")
+                    .read(Pipeline.RATING_BATCHES)
+                    .cache(Pipeline.MOVIES)
+                    .map(BatchJoinMapper.class);
+        } else if (ReplicatedJoin.isEnabled(cf)) {
+            // join the movies in the mapper, Job 1 is not needed
+            job2 = pipeline.stage("Job 2")
+                    .read(Pipeline.RATINGS)
+                    .cache(Pipeline.MOVIES)
+                    .map(app.ReplicatedJoinMapper.class);
+        } else if (SkewJoin.isEnabled(cf)) {
+            // stream the join per rating, the hot movies are salted over the reducers
+            SkewJoin.join(pipeline, cf, "Job 1", app.StreamUserReducer.class, "intermediate_output1");
+            job2 = pipeline.stage("Job 2")
+                    .read("intermediate_output1");
+        } else {
+            pipeline.stage("Job 1")
+                    .read(Pipeline.MOVIES, Pipeline.RATINGS)
+                    .map(app.MovieMapper.class)
+                    .reduce(app.FirstReducer.class)
+                    .write("intermediate_output1");
+            job2 = pipeline.stage("Job 2")
+                    .read("intermediate_output1")
+                    .map(app.UserMapper.class);
+        }
+        if (ParallelCount.isEnabled(cf)) {
+            // count the favorites in Job 2 and merge the partial counts in Job 3
+            ParallelCount.favorites(job2, "intermediate_output2");
+            if (TopK.isEnabled(cf)) {
+                // only the K most frequent titles of each merge reducer reach the driver
+                ParallelCount.topMerge(pipeline.stage("Job 3"), "intermediate_output2", "intermediate_output3");
+                return TopK.run(pipeline, cf, "intermediate_output3", p);
+            }
+            ParallelCount.merge(pipeline.stage("Job 3"), "intermediate_output2", p);
+            return pipeline.run();
+        }
+        job2.partition(UserRatingKey.UserPartitioner.class)
+                .group(UserRatingKey.GroupComparator.class)
+                .reduce(app.SecondReducer.class)
+                .write("intermediate_output2");
+        pipeline.stage("Job 3")
+                .read("intermediate_output2")
+                .map(SimpleMap.class)
+                .reduce(AscendReduce.class)
+                .writeText(p);
+        return pipeline.run();
+    }
+
+    public static void main(String args[]) throws Exception {
+        int res = ToolRunner.run(cf, new ChainSec(), args);
+        System.exit(res);
+    }
+}
@@ -0,0 +1,262 @@
+package app;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+// First Reduce: compress in a single record all the ratings of a movie.
+// Input:  movieId t:movieTitle
+//         movieId r:userId|userRate
+//         movieId r:userId|userRate
+//         ...
+// Output: 1 movieTitle1=userId|userRate,userId|userRate,...
+//         1 movieTitle2=userId|userRate,userId|userRate,...
+class ReducerOne extends Reducer<IdWritable, JoinValue, Text, MovieRatings> {
+
+    private final MovieRatings ret = new MovieRatings();
+    private final static Text one = new Text("1");
+    private GroupCounter groups;
+    private Counter misses;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        groups = new GroupCounter(context);
+        misses = context.getCounter(Metrics.Records.JOIN_MISSES);
+    }
+
+    @Override
+    public void reduce(IdWritable key, Iterable<JoinValue> values, Context context) throws IOException, InterruptedException {
+        ret.clear();
+        boolean titled = false;
+        for (JoinValue v : values) {
+            if (v.isTitle()) {
+                if (!titled) {
+                    ret.setTitle(v.getTitle());
+                    titled = true;
+                }
+            } else {
+                ret.add(v.getUserId(), v.getRate());
+            }
+        }
+        groups.add(ret.size() + (titled ? 1 : 0));
+        if (!titled) {
+            misses.increment(ret.size());
+        }
+        context.write(one, ret);
+    }
+}
+
+// Second Map: just pass the data
+// Input:  1 movieTitle1=userId|userRate,userId|userRate,...
+//         1 movieTitle2=userId|userRate,userId|userRate,...
+// Output: 1 movieTitle1=userId|userRate,userId|userRate,...
+//         1 movieTitle2=userId|userRate,userId|userRate,...
+class SecondMapper extends Mapper<Text, MovieRatings, Text, MovieRatings> {
+
+    @Override
+    public void map(Text key, MovieRatings value, Context context) throws IOException, InterruptedException {
+        context.write(key, value);
+    }
+}
+
+// Second Map (replicated join): resolve the title of each rating in the mapper
+// Input:  ratings.csv (userId,movieId,rating,timestamp) or binary ratings
+// Output: 1 movieTitle1=userId|userRate
+//         1 movieTitle2=userId|userRate
+class ReplicatedOneMapper extends ReplicatedJoinBase<Text, MovieRatings> {
+
+    private final MovieRatings ret = new MovieRatings();
+    private final static Text one = new Text("1");
+
+    @Override
+    public void map(Object key, Writable value, Context context) throws IOException, InterruptedException {
+        if (!join(key, value)) {
+            return;
+        }
+        ret.clear();
+        ret.setTitle(title);
+        ret.add(userId, rate);
+        context.write(one, ret);
+    }
+}
+
+// First Reduce (skew join): write each rating with its title under the key "1",
+// one record per rating like ReplicatedOneMapper.
+// Input:  movieId#salt t:movieTitle
+//         movieId#salt r:userId|userRate
+//         ...
+// Output: 1 movieTitle1=userId|userRate
+//         1 movieTitle1=userId|userRate
+class StreamOneReducer extends StreamJoinReducer<Text, MovieRatings> {
+
+    private final MovieRatings ret = new MovieRatings();
+    private final static Text one = new Text("1");
+
+    @Override
+    protected void write(Text title, int userId, byte rate, Context context) throws IOException, InterruptedException {
+        ret.clear();
+        ret.setTitle(title);
+        ret.add(userId, rate);
+        context.write(one, ret);
+    }
+}
+
+// Second Reduce: chose one random best rated movie per user
+// Input:  1 movieTitle1=userId|userRate,userId|userRate,...
+//         1 movieTitle2=userId|userRate,userId|userRate,...
+// Output: N1 movieTitle1
+//         N2 movieTitle2
+//         ...
+//         N movieTitleN
+// With app.spill.memory the favorites are spilled to sorted runs when the table is full
+// and merged back by user at the end (see Spill).
+class AllReducer extends Reducer<Text, MovieRatings, IntWritable, Text> {
+
+    // the favorite of each user, as an index of titles
+    final FavoriteTable favorites = new FavoriteTable();
+    final TitleDictionary titles = new TitleDictionary();
+    private final IntWritable num = new IntWritable();
+    private final Text content = new Text();
+    private final DataOutputBuffer list = new DataOutputBuffer();
+    // with a memory budget (app.spill.memory): the tables of at most capacity users,
+    // spilled when they are full
+    private SpillSorter spilled;
+    private int capacity = Integer.MAX_VALUE;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        if (Spill.isEnabled(conf)) {
+            long half = Spill.getMemory(conf) / 2;
+            capacity = (int) Math.max(1, Math.min(1 << 28, half / FavoriteTable.BYTES_PER_USER));
+            spilled = new SpillSorter(context, "favorites", half);
+        }
+    }
+
+    @Override
+    public void reduce(Text key, Iterable<MovieRatings> values, Context context) throws IOException, InterruptedException {
+        // for each movie
+        for (MovieRatings movie : values) {
+            int title = -1;
+            // for each vote
+            for (int i = 0; i < movie.size(); i++) {
+                int userId = movie.getUser(i);
+                byte rate = movie.getRate(i);
+                // no entry found, or the rate is better than the actual vote: replace it
+                if (favorites.improves(userId, rate)) {
+                    if (title < 0) {
+                        title = titles.intern(movie.getTitle());
+                    }
+                    favorites.put(userId, title, rate);
+                    if (favorites.size() >= capacity) {
+                        favorites.spill(spilled);
+                    }
+                }
+            }
+        }
+
+        // count the favorites of each title and sort the titles by frequency (only
+        // the K most frequent ones in top-K mode)
+        int[] freq;
+        if (spilled != null && !spilled.isEmpty()) {
+            favorites.spill(spilled);
+            try (SpillSorter.Cursor cursor = spilled.merge()) {
+                freq = FavoriteTable.count(cursor, titles.size());
+            }
+        } else {
+            freq = favorites.count(titles.size());
+        }
+        Configuration conf = context.getConfiguration();
+        long[] order = TopK.isEnabled(conf) ? TopK.select(freq, conf) : FavoriteTable.ascending(freq);
+
+        // write the titles of each frequency in ascending order
+        for (int i = 0; i < order.length;) {
+            int f = (int) (order[i] >>> 32);
+            list.reset();
+            for (; i < order.length && (int) (order[i] >>> 32) == f; i++) {
+                if (list.getLength() > 0) {
+                    list.write(' ');
+                }
+                titles.write((int) order[i], list);
+            }
+            num.set(f);
+            content.set(list.getData(), 0, list.getLength());
+            context.write(num, content);
+        }
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        if (spilled != null) {
+            spilled.close();
+        }
+    }
+}
+
+public class ChainTer extends Configured implements Tool {
+
+    static Configuration cf;
+
+    @Override
+    public int run(String args[]) throws IOException, InterruptedException, ClassNotFoundException {
+        cf = getConf();
+        Intermediate.configure(cf);
+        boolean replicated = ReplicatedJoin.isEnabled(cf);
+        Pipeline pipeline = new Pipeline(cf, ChainTer.class).sources(new Path(args[0]));
+        if (Approximate.isEnabled(cf)) {
+            // estimate the frequencies with sketches in a single job
+            Approximate.sketch(pipeline, "Sketch", new Path(args[1]));
+            return pipeline.run();
+        }
+        if (SkewJoin.isEnabled(cf)) {
+            // stream the join per rating, the hot movies are salted over the reducers
+            SkewJoin.join(pipeline, cf, "Job 1", StreamOneReducer.class, "intermediate_output1");
+        } else if (!replicated) {
+            pipeline.stage("Job 1")
+                    .read(Pipeline.MOVIES, Pipeline.RATINGS)
+                    .map(app.MovieMapper.class)
+                    .reduce(ReducerOne.class)
+                    .write("intermediate_output1");
+        }
+        Stage job2 = pipeline.stage("Job 2");
+        if (replicated) {
+            // join the movies in the mapper, Job 1 is not needed
+            job2.read(Pipeline.RATINGS).cache(Pipeline.MOVIES);
+        } else {
+            job2.read("intermediate_output1");
+        }
+        Path p = new Path(args[1]);
+        if (ParallelCount.isEnabled(cf)) {
+            // choose the favorites and count them in parallel, then merge the counts
+            job2.map(replicated ? ReplicatedJoinMapper.class : UserMapper.class);
+            ParallelCount.favorites(job2, "intermediate_output2");
+            if (TopK.isEnabled(cf)) {
+                // only the K most frequent titles of each merge reducer reach the driver
+                ParallelCount.topMerge(pipeline.stage("Job 3"), "intermediate_output2", "intermediate_output3");
+                return TopK.run(pipeline, cf, "intermediate_output3", p);
+            }
+            ParallelCount.merge(pipeline.stage("Job 3"), "intermediate_output2", p);
+            return pipeline.run();
+        }
+        job2.map(replicated ? ReplicatedOneMapper.class : SecondMapper.class)
+                .reduce(AllReducer.class)
+                .writeText(p);
+        return pipeline.run();
+    }
+
+    public static void main(String args[]) throws Exception {
+        int res = ToolRunner.run(cf, new ChainTer(), args);
+        System.exit(res);
+    }
+}
@@ -0,0 +1,100 @@
+package app;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+
+// Count-Min sketch of the counts of int items: depth rows of width counters, an item
+// is added to one counter per row and its count is the minimum of its counters.
+// With width = ceil(e / epsilon) and depth = ceil(ln(1 / delta)), an estimate is never
+// below the true count and exceeds it by more than epsilon * total with probability
+// at most delta. Two sketches of the same size merge by adding their counters.
+class CountMinSketch implements Writable {
+
+    private int depth;
+    private int width;
+    private int[] counters;
+    private long total;
+
+    CountMinSketch() {
+    }
+
+    CountMinSketch(double epsilon, double delta) {
+        if (epsilon <= 0 || epsilon >= 1 || delta <= 0 || delta >= 1) {
+            throw new IllegalArgumentException("epsilon and delta must be in (0, 1)");
+        }
+        width = (int) Math.ceil(Math.E / epsilon);
+        depth = (int) Math.ceil(Math.log(1 / delta));
+        counters = new int[depth * width];
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    // The sum of all the counts added.
+    public long getTotal() {
+        return total;
+    }
+
+    public void add(int item, int count) {
+        long h = Approximate.hash(item);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 0; i < depth; i++) {
+            counters[i * width + Integer.remainderUnsigned(h1 + i * h2, width)] += count;
+        }
+        total += count;
+    }
+
+    public int estimate(int item) {
+        long h = Approximate.hash(item);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            min = Math.min(min, counters[i * width + Integer.remainderUnsigned(h1 + i * h2, width)]);
+        }
+        return min;
+    }
+
+    public void merge(CountMinSketch other) {
+        if (other.depth != depth || other.width != width) {
+            throw new IllegalArgumentException("Cannot merge a " + other.depth + "x" + other.width
+                    + " Count-Min sketch into a " + depth + "x" + width + " one");
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] += other.counters[i];
+        }
+        total += other.total;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(depth);
+        out.writeInt(width);
+        out.writeLong(total);
+        for (int c : counters) {
+            out.writeInt(c);
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        depth = in.readInt();
+        width = in.readInt();
+        total = in.readLong();
+        if (counters == null || counters.length != depth * width) {
+            counters = new int[depth * width];
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = in.readInt();
+        }
+    }
+}
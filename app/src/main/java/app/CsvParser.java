@@ -0,0 +1,195 @@
+package app;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Text;
+
+// Parser of the MovieLens CSV lines working directly on the bytes of a Text.
+// parse() only records where each field starts and ends, the fields are then decoded
+// on demand without creating any String or array. Quoted fields ("Title, The (1995)")
+// may contain commas and doubled quotes.
+class CsvParser {
+
+    private byte[] bytes;
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+    private boolean[] quoted = new boolean[8];
+    private int fields;
+    private byte[] scratch = new byte[256];
+
+    public int fields() {
+        return fields;
+    }
+
+    public boolean parse(Text line) {
+        return parse(line.getBytes(), 0, line.getLength());
+    }
+
+    // Split the line in fields. Return false for an empty line.
+    public boolean parse(byte[] b, int off, int len) {
+        bytes = b;
+        fields = 0;
+        int end = off + len;
+        if (len > 0 && b[end - 1] == '\r') {
+            end--;
+        }
+        if (end <= off) {
+            return false;
+        }
+        int i = off;
+        while (true) {
+            if (fields == starts.length) {
+                starts = Arrays.copyOf(starts, fields * 2);
+                ends = Arrays.copyOf(ends, fields * 2);
+                quoted = Arrays.copyOf(quoted, fields * 2);
+            }
+            if (i < end && b[i] == '"') {
+                // quoted field: find the closing quote, skipping the doubled ones
+                int j = i + 1;
+                while (j < end) {
+                    if (b[j] == '"') {
+                        if (j + 1 < end && b[j + 1] == '"') {
+                            j += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    j++;
+                }
+                starts[fields] = i + 1;
+                ends[fields] = Math.min(j, end);
+                quoted[fields] = true;
+                i = j + 1;
+                while (i < end && b[i] != ',') {
+                    i++;
+                }
+            } else {
+                int j = i;
+                while (j < end && b[j] != ',') {
+                    j++;
+                }
+                starts[fields] = i;
+                ends[fields] = j;
+                quoted[fields] = false;
+                i = j;
+            }
+            fields++;
+            if (i >= end) {
+                return true;
+            }
+            i++;
+        }
+    }
+
+    // Return the field as a non-negative int, or -1 if it is not one (e.g. the header).
+    public int getInt(int field) {
+        long v = getLong(field);
+        return v > Integer.MAX_VALUE ? -1 : (int) v;
+    }
+
+    // Return the field as a non-negative long, or -1 if it is not one.
+    public long getLong(int field) {
+        if (field >= fields) {
+            return -1;
+        }
+        int s = starts[field];
+        int e = ends[field];
+        if (s == e || e - s > 18) {
+            return -1;
+        }
+        long v = 0;
+        for (int i = s; i < e; i++) {
+            int d = bytes[i] - '0';
+            if (d < 0 || d > 9) {
+                return -1;
+            }
+            v = v * 10 + d;
+        }
+        return v;
+    }
+
+    // Return the rating in half stars (see Ratings), or -1 if the field is not a rating.
+    // The value is read as a fixed-point number with two decimals: "4.5" -> 9.
+    public byte getRating(int field) {
+        if (field >= fields) {
+            return -1;
+        }
+        int s = starts[field];
+        int e = ends[field];
+        int units = 0;
+        int hundredths = 0;
+        int scale = 10;
+        boolean dot = false;
+        boolean digits = false;
+        for (int i = s; i < e; i++) {
+            byte c = bytes[i];
+            if (c == '.' && !dot) {
+                dot = true;
+                continue;
+            }
+            int d = c - '0';
+            if (d < 0 || d > 9) {
+                return -1;
+            }
+            digits = true;
+            if (!dot) {
+                units = units * 10 + d;
+                if (units > 63) {
+                    return -1;
+                }
+            } else if (scale > 0) {
+                hundredths += d * scale;
+                scale /= 10;
+            }
+        }
+        if (!digits) {
+            return -1;
+        }
+        return (byte) (((units * 100 + hundredths) * 2 + 50) / 100);
+    }
+
+    // Set out to the field, without the quotes.
+    public void getText(int field, Text out) {
+        if (field >= fields) {
+            out.clear();
+            return;
+        }
+        int s = starts[field];
+        int e = ends[field];
+        if (!quoted[field]) {
+            out.set(bytes, s, e - s);
+            return;
+        }
+        // unescape the doubled quotes
+        if (scratch.length < e - s) {
+            scratch = new byte[e - s];
+        }
+        int n = 0;
+        for (int i = s; i < e; i++) {
+            scratch[n++] = bytes[i];
+            if (bytes[i] == '"' && i + 1 < e && bytes[i + 1] == '"') {
+                i++;
+            }
+        }
+        out.set(scratch, 0, n);
+    }
+
+    // Set out to the bytes of the line from the field first to the field last, with the
+    // commas between them and the quotes of the quoted fields, as they are in the file.
+    public void getRaw(int first, int last, Text out) {
+        if (last >= fields) {
+            out.clear();
+            return;
+        }
+        int s = starts[first] - (quoted[first] ? 1 : 0);
+        int e = last + 1 < fields ? starts[last + 1] - (quoted[last + 1] ? 1 : 0) - 1 : ends[last];
+        out.set(bytes, s, e - s);
+    }
+
+    // Set out to the title of a line of movies.csv (movieId,title,genres): everything
+    // between the first and the last comma, quotes included, like the original
+    // String-based MovieMapper.
+    public void getMovieTitle(Text out) {
+        getRaw(1, Math.max(1, fields - 2), out);
+    }
+}
@@ -0,0 +1,55 @@
+package app;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+// The favorite of a user in a generation of the Incremental state: the movieId, the
+// rate the user gave it and the movieId of the favorite it replaced (-1 for a new
+// user), so that the frequency table can be corrected from the changes alone.
+public class FavoriteChange implements Writable {
+
+    private int movieId;
+    private byte rate;
+    private int previous = -1;
+
+    public int getMovieId() {
+        return movieId;
+    }
+
+    public byte getRate() {
+        return rate;
+    }
+
+    public int getPrevious() {
+        return previous;
+    }
+
+    public void set(int movieId, byte rate, int previous) {
+        this.movieId = movieId;
+        this.rate = rate;
+        this.previous = previous;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, movieId);
+        out.writeByte(rate);
+        WritableUtils.writeVInt(out, previous);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        movieId = WritableUtils.readVInt(in);
+        rate = in.readByte();
+        previous = WritableUtils.readVInt(in);
+    }
+
+    @Override
+    public String toString() {
+        return movieId + "|" + Ratings.toString(rate) + (previous >= 0 ? "<" + previous : "");
+    }
+}
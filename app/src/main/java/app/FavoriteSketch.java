@@ -0,0 +1,174 @@
+package app;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Writable;
+
+// The sketches of the favorites of a map task (see Approximate): a Count-Min sketch
+// of the favorite count of each movie, a HyperLogLog of the distinct users, and the
+// heavy hitter candidates, the movies with the largest estimated counts (at most
+// app.approx.heavy of them per task, any number after a merge).
+public class FavoriteSketch implements Writable {
+
+    private final CountMinSketch counts;
+    private final HyperLogLog users;
+    private int heavy;
+    private int[] candidates = new int[16];
+    // the estimated count of each candidate, only kept while adding
+    private int[] estimates = new int[16];
+    private int size;
+    private int min = -1;
+    // the map tasks merged in the sketch, and the times a task saw a userId lower than
+    // the previous one (the ratings are not sorted by user)
+    private int tasks = 1;
+    private long unsorted;
+
+    public FavoriteSketch() {
+        counts = new CountMinSketch();
+        users = new HyperLogLog();
+    }
+
+    FavoriteSketch(Configuration conf) {
+        counts = new CountMinSketch(conf.getDouble(Approximate.EPSILON, 0.001), conf.getDouble(Approximate.DELTA, 0.01));
+        users = new HyperLogLog(conf.getInt(Approximate.HLL_BITS, 14));
+        heavy = conf.getInt(Approximate.HEAVY, 100);
+        candidates = new int[heavy];
+        estimates = new int[heavy];
+    }
+
+    public CountMinSketch getCounts() {
+        return counts;
+    }
+
+    public HyperLogLog getUsers() {
+        return users;
+    }
+
+    public int getHeavy() {
+        return heavy;
+    }
+
+    public int getTasks() {
+        return tasks;
+    }
+
+    public long getUnsorted() {
+        return unsorted;
+    }
+
+    // An empty sketch to merge the sketches of the tasks into.
+    static FavoriteSketch forMerge(Configuration conf) {
+        FavoriteSketch s = new FavoriteSketch(conf);
+        s.tasks = 0;
+        return s;
+    }
+
+    // Count a new run of ratings of a user, after the run of previous.
+    public void addUser(int userId, int previous) {
+        users.add(userId);
+        if (userId < previous) {
+            unsorted++;
+        }
+    }
+
+    // Count a favorite and keep the movie as a candidate if its estimate is among the
+    // largest ones of the task.
+    public void addFavorite(int movieId) {
+        counts.add(movieId, 1);
+        int e = counts.estimate(movieId);
+        for (int i = 0; i < size; i++) {
+            if (candidates[i] == movieId) {
+                estimates[i] = e;
+                if (i == min) {
+                    min = -1;
+                }
+                return;
+            }
+        }
+        if (size < heavy) {
+            candidates[size] = movieId;
+            estimates[size++] = e;
+            min = -1;
+            return;
+        }
+        if (heavy == 0) {
+            return;
+        }
+        if (min < 0) {
+            min = 0;
+            for (int i = 1; i < size; i++) {
+                if (estimates[i] < estimates[min]) {
+                    min = i;
+                }
+            }
+        }
+        if (e > estimates[min]) {
+            candidates[min] = movieId;
+            estimates[min] = e;
+            min = -1;
+        }
+    }
+
+    // Add the sketches of another task and its candidates.
+    public void merge(FavoriteSketch other) {
+        counts.merge(other.counts);
+        users.merge(other.users);
+        heavy = Math.max(heavy, other.heavy);
+        tasks += other.tasks;
+        unsorted += other.unsorted;
+        if (size + other.size > candidates.length) {
+            candidates = Arrays.copyOf(candidates, Math.max(candidates.length * 2, size + other.size));
+        }
+        System.arraycopy(other.candidates, 0, candidates, size, other.size);
+        size += other.size;
+    }
+
+    // The heavy hitters among the candidates, as (estimate << 32) | movieId, the
+    // smallest first.
+    public long[] heavyHitters() {
+        IntLongMap seen = new IntLongMap(size);
+        TopKHeap top = new TopKHeap(heavy);
+        for (int i = 0; i < size; i++) {
+            int movieId = candidates[i];
+            if (seen.get(movieId, -1) < 0) {
+                seen.put(movieId, 0);
+                top.offer((long) counts.estimate(movieId) << 32 | movieId);
+            }
+        }
+        return top.sorted(false);
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        counts.write(out);
+        users.write(out);
+        out.writeInt(heavy);
+        out.writeInt(tasks);
+        out.writeLong(unsorted);
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeInt(candidates[i]);
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        counts.readFields(in);
+        users.readFields(in);
+        heavy = in.readInt();
+        tasks = in.readInt();
+        unsorted = in.readLong();
+        size = in.readInt();
+        if (candidates.length < size) {
+            candidates = new int[size];
+        }
+        for (int i = 0; i < size; i++) {
+            candidates[i] = in.readInt();
+        }
+        min = -1;
+    }
+}
@@ -0,0 +1,142 @@
+package app;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
+
+// The favorite movie of each user and the frequency of the favorites, in memory: the
+// core of AllReducer (ChainTer) and of LocalEngine, so both pick and count the
+// favorites the same way.
+// A favorite is an item (a dense title index) and the rate the user gave it. A better
+// rate replaces it, an equal one keeps the first seen, like the "one random best rated
+// movie" of SecondReducer.
+class FavoriteTable {
+
+    // estimated bytes of the table per user, with the free slots of the map
+    static final int BYTES_PER_USER = 32;
+
+    // userId -> (item << 8) | rate of the favorite of the user
+    private final IntLongMap favorites;
+
+    FavoriteTable() {
+        favorites = new IntLongMap();
+    }
+
+    FavoriteTable(int expectedUsers) {
+        favorites = new IntLongMap(expectedUsers);
+    }
+
+    public int size() {
+        return favorites.size();
+    }
+
+    // Return true if a rate would replace the favorite of the user.
+    public boolean improves(int userId, byte rate) {
+        long fav = favorites.get(userId, -1);
+        return fav < 0 || (byte) fav < rate;
+    }
+
+    public void put(int userId, int item, byte rate) {
+        favorites.put(userId, (long) item << 8 | (rate & 0xFF));
+    }
+
+    public void offer(int userId, int item, byte rate) {
+        if (improves(userId, rate)) {
+            put(userId, item, rate);
+        }
+    }
+
+    // Add the favorites of another table, as if its ratings had been offered here.
+    public void merge(FavoriteTable other) {
+        other.favorites.forEach((userId, fav) -> offer(userId, (int) (fav >>> 8), (byte) fav));
+    }
+
+    // The number of users whose favorite is each item, for the items 0..items-1.
+    public int[] count(int items) {
+        int[] freq = new int[items];
+        favorites.forEachValue(fav -> freq[(int) (fav >>> 8)]++);
+        return freq;
+    }
+
+    // Move the favorites to a sorter as (userId << 32) | (255 - rate) << 24 | item
+    // records: sorted by user, then from the best rate, so the first record of each
+    // user after the merge is its favorite among all the spilled tables.
+    public void spill(SpillSorter sorter) throws IOException {
+        IOException[] failed = new IOException[1];
+        favorites.forEach((userId, fav) -> {
+            int item = (int) (fav >>> 8);
+            if (failed[0] != null) {
+                return;
+            }
+            if (item >= 1 << 24) {
+                throw new IllegalStateException("Too many titles to spill: " + item);
+            }
+            try {
+                sorter.add((long) userId << 32 | (255 - (fav & 0xFF)) << 24 | item, 1);
+            } catch (IOException e) {
+                failed[0] = e;
+            }
+        });
+        if (failed[0] != null) {
+            throw failed[0];
+        }
+        favorites.clear();
+    }
+
+    // The number of users whose favorite is each item, for the items 0..items-1, from
+    // the records of spilled tables.
+    static int[] count(SpillSorter.Cursor spilled, int items) throws IOException {
+        int[] freq = new int[items];
+        long user = -1;
+        while (spilled.next()) {
+            long key = spilled.getKey();
+            if (key >>> 32 != user) {
+                user = key >>> 32;
+                freq[(int) key & 0xFFFFFF]++;
+            }
+        }
+        return freq;
+    }
+
+    // The items with a non-zero frequency as (frequency << 32) | item, sorted by
+    // frequency then item: consecutive entries of the same frequency form one line
+    // of the ascending output.
+    static long[] ascending(int[] freq) {
+        int n = 0;
+        long[] order = new long[freq.length];
+        for (int t = 0; t < freq.length; t++) {
+            if (freq[t] > 0) {
+                order[n++] = (long) freq[t] << 32 | t;
+            }
+        }
+        Arrays.sort(order, 0, n);
+        return Arrays.copyOf(order, n);
+    }
+
+    // Write the titles of each frequency of order (ascending or descending) as
+    // TextOutputFormat does: "N\tmovieTitle1 movieTitle2 ...".
+    static void writeText(long[] order, TitleDictionary titles, FileSystem fs, Path file) throws IOException {
+        DataOutputBuffer list = new DataOutputBuffer();
+        try (FSDataOutputStream out = fs.create(file, false)) {
+            for (int i = 0; i < order.length;) {
+                int f = (int) (order[i] >>> 32);
+                list.reset();
+                list.write(Integer.toString(f).getBytes(StandardCharsets.UTF_8));
+                list.write('\t');
+                for (int start = i; i < order.length && (int) (order[i] >>> 32) == f; i++) {
+                    if (i > start) {
+                        list.write(' ');
+                    }
+                    titles.write((int) order[i], list);
+                }
+                list.write('\n');
+                out.write(list.getData(), 0, list.getLength());
+            }
+        }
+    }
+}
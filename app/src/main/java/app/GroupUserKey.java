@@ -0,0 +1,134 @@
+package app;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapreduce.Partitioner;
+
+// Key (group, userId, rate) of ChainMulti: UserRatingKey tagged with the grouping the
+// rating is counted in (see MovieGroups). Sorted by group, userId and rate descending,
+// partitioned and grouped by (group, userId), so each reduce call gets the movies of a
+// user within one group with the best rated ones first.
+public class GroupUserKey implements WritableComparable<GroupUserKey> {
+
+    static {
+        WritableComparator.define(GroupUserKey.class, new SortComparator());
+    }
+
+    private int group;
+    private int userId;
+    private byte rate;
+
+    public int getGroup() {
+        return group;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public byte getRate() {
+        return rate;
+    }
+
+    public void set(int group, int userId, byte rate) {
+        this.group = group;
+        this.userId = userId;
+        this.rate = rate;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, group);
+        WritableUtils.writeVInt(out, userId);
+        out.writeByte(rate);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        group = WritableUtils.readVInt(in);
+        userId = WritableUtils.readVInt(in);
+        rate = in.readByte();
+    }
+
+    @Override
+    public int compareTo(GroupUserKey o) {
+        int c = compareGroups(this, o);
+        return c != 0 ? c : Byte.compare(o.rate, rate);
+    }
+
+    static int compareGroups(GroupUserKey a, GroupUserKey b) {
+        int c = Integer.compare(a.group, b.group);
+        return c != 0 ? c : Integer.compare(a.userId, b.userId);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof GroupUserKey && compareTo((GroupUserKey) o) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return group * 31 + userId;
+    }
+
+    @Override
+    public String toString() {
+        return group + "#" + userId + "|" + Ratings.toString(rate);
+    }
+
+    // Compare (group, userId) on the serialized bytes.
+    static int compareGroups(byte[] b1, int s1, byte[] b2, int s2) {
+        int c = Integer.compare(IdWritable.readId(b1, s1), IdWritable.readId(b2, s2));
+        if (c != 0) {
+            return c;
+        }
+        return Integer.compare(IdWritable.readId(b1, s1 + WritableUtils.decodeVIntSize(b1[s1])),
+                IdWritable.readId(b2, s2 + WritableUtils.decodeVIntSize(b2[s2])));
+    }
+
+    // Sort by group, userId, then by rate descending.
+    public static class SortComparator extends WritableComparator {
+
+        public SortComparator() {
+            super(GroupUserKey.class);
+        }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            int c = compareGroups(b1, s1, b2, s2);
+            return c != 0 ? c : Byte.compare(b2[s2 + l2 - 1], b1[s1 + l1 - 1]);
+        }
+    }
+
+    // Group the keys of the same user and group in a single reduce call.
+    public static class GroupComparator extends WritableComparator {
+
+        public GroupComparator() {
+            super(GroupUserKey.class);
+        }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            return compareGroups(b1, s1, b2, s2);
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public int compare(WritableComparable a, WritableComparable b) {
+            return compareGroups((GroupUserKey) a, (GroupUserKey) b);
+        }
+    }
+
+    public static class GroupUserPartitioner<V> extends Partitioner<GroupUserKey, V> {
+
+        @Override
+        public int getPartition(GroupUserKey key, V value, int numPartitions) {
+            return (key.hashCode() & Integer.MAX_VALUE) % numPartitions;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package app;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+
+// HyperLogLog estimate of the number of distinct int items: 2^bits registers of one
+// byte, each keeping the longest run of leading zeros seen in the hashes routed to it.
+// The relative standard error is 1.04 / sqrt(2^bits) (0.8% with 14 bits, in 16 KB).
+// Two sketches of the same size merge by keeping the maximum of each register.
+class HyperLogLog implements Writable {
+
+    private int bits;
+    private byte[] registers;
+
+    HyperLogLog() {
+    }
+
+    HyperLogLog(int bits) {
+        if (bits < 4 || bits > 18) {
+            throw new IllegalArgumentException("HyperLogLog bits must be in [4, 18]: " + bits);
+        }
+        this.bits = bits;
+        registers = new byte[1 << bits];
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    public void add(int item) {
+        long h = Approximate.hash(item);
+        int index = (int) (h >>> (64 - bits));
+        // the rank of the first 1 bit in the remaining bits (they end with a 1 bit)
+        byte rank = (byte) (Long.numberOfLeadingZeros((h << bits) | (1L << (bits - 1))) + 1);
+        if (registers[index] < rank) {
+            registers[index] = rank;
+        }
+    }
+
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte r : registers) {
+            sum += 1.0 / (1L << r);
+            if (r == 0) {
+                zeros++;
+            }
+        }
+        double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+        double e = alpha * m * m / sum;
+        if (e <= 2.5 * m && zeros > 0) {
+            // linear counting for the small cardinalities
+            e = m * Math.log((double) m / zeros);
+        }
+        return Math.round(e);
+    }
+
+    public double relativeError() {
+        return 1.04 / Math.sqrt(registers.length);
+    }
+
+    public void merge(HyperLogLog other) {
+        if (other.bits != bits) {
+            throw new IllegalArgumentException("Cannot merge a HyperLogLog of " + other.bits
+                    + " bits into one of " + bits + " bits");
+        }
+        for (int i = 0; i < registers.length; i++) {
+            registers[i] = (byte) Math.max(registers[i], other.registers[i]);
+        }
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(bits);
+        out.write(registers);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        bits = in.readByte();
+        if (registers == null || registers.length != 1 << bits) {
+            registers = new byte[1 << bits];
+        }
+        in.readFully(registers);
+    }
+}
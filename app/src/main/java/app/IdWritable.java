@@ -0,0 +1,93 @@
+package app;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+// A userId or a movieId. Serialized as a variable-length int (1 to 3 bytes for the
+// MovieLens ids) and ordered numerically.
+public class IdWritable implements WritableComparable<IdWritable> {
+
+    static {
+        WritableComparator.define(IdWritable.class, new Comparator());
+    }
+
+    private int id;
+
+    public IdWritable() {
+    }
+
+    public IdWritable(int id) {
+        this.id = id;
+    }
+
+    public int get() {
+        return id;
+    }
+
+    public void set(int id) {
+        this.id = id;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, id);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        id = WritableUtils.readVInt(in);
+    }
+
+    @Override
+    public int compareTo(IdWritable o) {
+        return Integer.compare(id, o.id);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof IdWritable && ((IdWritable) o).id == id;
+    }
+
+    @Override
+    public int hashCode() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return Integer.toString(id);
+    }
+
+    // Compare two serialized ids without deserializing them: decode the vints
+    // directly from the sort buffer.
+    public static class Comparator extends WritableComparator {
+
+        public Comparator() {
+            super(IdWritable.class);
+        }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            return Integer.compare(readId(b1, s1), readId(b2, s2));
+        }
+    }
+
+    // Decode an id serialized at b[s].
+    static int readId(byte[] b, int s) {
+        byte first = b[s];
+        if (first >= -112) {
+            return first;
+        }
+        int len = WritableUtils.decodeVIntSize(first);
+        long i = 0;
+        for (int idx = 1; idx < len; idx++) {
+            i = (i << 8) | (b[s + idx] & 0xFF);
+        }
+        return (int) (WritableUtils.isNegativeVInt(first) ? (i ^ -1L) : i);
+    }
+}
@@ -0,0 +1,400 @@
+package app;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.VIntWritable;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.output.MapFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.partition.HashPartitioner;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+// Objective: keep the favorite frequencies up to date when new ratings arrive, at a
+// cost that depends on the new ratings and not on the whole history.
+// Solution: a state directory holds the favorite of each user and the frequency of
+// each movie, in generations:
+//   users-N/   MapFiles (userId -> FavoriteChange) of the users whose favorite
+//              changed in generation N
+//   base-N/    MapFiles of every user, the generations up to N compacted
+//   counts-N/  SequenceFiles (movieId -> frequency) after generation N
+// A run applies a delta (a directory with movies.csv and the new ratings files):
+//   Delta:  the best new rating of each user is compared to the favorite looked up in
+//           the generations, newest first; the users with a better rating are written
+//           to users-N with the favorite they replace
+//   Counts: the old counts, +1 for each new favorite and -1 for each replaced one
+//   Table:  the ascending frequency table with the titles (like ChainFirst)
+// The first run, on an empty state, applies the whole history. When more than
+// app.incremental.generations (default 8) users-N directories pile up, they are
+// compacted with the last base into base-N, the only step that reads all the users.
+// A generation is only used once its counts are committed (_COMMITTED), so a failed
+// run leaves the state as it was; a delta must be applied only once. A failed
+// compaction does not fail the run (the delta is already committed): the generations
+// are compacted by the next run. The ratings are
+// assumed to be added, never changed nor removed.
+// Usage: app.Incremental <delta dir> <state dir> <output dir>
+public class Incremental extends Configured implements Tool {
+
+    private static final Log LOG = LogFactory.getLog(Incremental.class);
+
+    public static final String GENERATIONS = "app.incremental.generations";
+    // the user state directories, newest first, for DeltaFavoriteReducer
+    static final String USERS = "app.incremental.users";
+    static final String USERS_DIR = "users-";
+    static final String BASE_DIR = "base-";
+    static final String COUNTS_DIR = "counts-";
+    static final String COMMITTED = "_COMMITTED";
+
+    @Override
+    public int run(String[] args) throws IOException, InterruptedException, ClassNotFoundException {
+        if (args.length != 3) {
+            System.err.println("Usage: app.Incremental <delta dir> <state dir> <output dir>");
+            return 2;
+        }
+        Configuration conf = getConf();
+        Intermediate.configure(conf);
+        Path state = new Path(args[1]);
+        FileSystem fs = state.getFileSystem(conf);
+        fs.mkdirs(state);
+
+        // the committed generations, then drop what a failed or interrupted run left
+        TreeMap<Integer, Path> counts = generations(fs, state, COUNTS_DIR, COMMITTED);
+        TreeMap<Integer, Path> bases = generations(fs, state, BASE_DIR, "_SUCCESS");
+        int latest = counts.isEmpty() ? -1 : counts.lastKey();
+        int base = bases.isEmpty() ? -1 : bases.lastKey();
+        TreeMap<Integer, Path> users = new TreeMap<>();
+        for (FileStatus st : fs.listStatus(state)) {
+            String name = st.getPath().getName();
+            int g = generation(name);
+            boolean stale = g > latest
+                    || name.startsWith(USERS_DIR) && g <= base
+                    || name.startsWith(BASE_DIR) && (g < base || !bases.containsKey(g))
+                    || name.startsWith(COUNTS_DIR) && g < latest;
+            if (g >= 0 && stale) {
+                fs.delete(st.getPath(), true);
+            } else if (name.startsWith(USERS_DIR)) {
+                users.put(g, st.getPath());
+            }
+        }
+        List<String> lookup = new ArrayList<>();
+        for (Path p : users.descendingMap().values()) {
+            lookup.add(p.toString());
+        }
+        if (base >= 0) {
+            lookup.add(bases.get(base).toString());
+        }
+        conf.setStrings(USERS, lookup.toArray(new String[0]));
+
+        int next = latest + 1;
+        Path newUsers = new Path(state, name(USERS_DIR, next));
+        Path newCounts = new Path(state, name(COUNTS_DIR, next));
+        Pipeline pipeline = new Pipeline(conf, Incremental.class).sources(new Path(args[0]));
+        Stage delta = pipeline.stage("Delta");
+        if (Batches.isEnabled(conf)) {
+            delta.read(Pipeline.RATING_BATCHES).map(BatchFavoriteIdMapper.class);
+        } else {
+            delta.read(Pipeline.RATINGS).map(RatingIdMapper.class);
+        }
+        delta.partition(UserRatingKey.UserPartitioner.class)
+                .group(UserRatingKey.GroupComparator.class)
+                .reduce(DeltaFavoriteReducer.class)
+                .indexed()
+                .write(newUsers.toString());
+        Stage merge = pipeline.stage("Counts").read(newUsers.toString());
+        if (latest >= 0) {
+            Path old = counts.get(latest);
+            pipeline.dataset(old.toString(), IdWritable.class, VIntWritable.class, Collections.singletonList(old));
+            merge.read(old.toString());
+        }
+        merge.map(CountChangeMapper.class)
+                .combine(CountCombiner.class)
+                .reduce(CountMergeReducer.class)
+                .write(newCounts.toString());
+        pipeline.stage("Table")
+                .read(newCounts.toString())
+                .cache(Pipeline.MOVIES)
+                .map(CountFrequencyMapper.class)
+                .reduce(TitleListReducer.class)
+                .reducers(1)
+                .writeText(new Path(args[2]));
+        if (pipeline.run() != 0) {
+            fs.delete(newUsers, true);
+            fs.delete(newCounts, true);
+            return 1;
+        }
+        fs.create(new Path(newCounts, COMMITTED)).close();
+        if (latest >= 0) {
+            fs.delete(counts.get(latest), true);
+        }
+
+        // the delta is applied: a failed compaction must not fail the run, or a retry
+        // would apply the delta twice. The generations stay for the next run to compact.
+        users.put(next, newUsers);
+        int max = conf.getInt(GENERATIONS, 8);
+        if (users.size() > max) {
+            boolean compacted = false;
+            try {
+                compacted = compact(conf, fs, state, next, users, base >= 0 ? bases.get(base) : null);
+            } catch (IOException | RuntimeException e) {
+                LOG.warn("Compaction of generation " + next + " failed", e);
+            }
+            if (!compacted) {
+                LOG.warn("Generation " + next + " is committed, " + users.size()
+                        + " generations are left to compact in the next run");
+            }
+        }
+        return 0;
+    }
+
+    // Merge the user generations and the last base in base-<next>, keeping the newest
+    // favorite of each user, then remove them. Return false if the job failed.
+    private boolean compact(Configuration conf, FileSystem fs, Path state, int next, Map<Integer, Path> users, Path base)
+            throws IOException, InterruptedException, ClassNotFoundException {
+        List<Path> inputs = new ArrayList<>(users.values());
+        if (base != null) {
+            inputs.add(base);
+        }
+        Path newBase = new Path(state, name(BASE_DIR, next));
+        Pipeline pipeline = new Pipeline(conf, Incremental.class);
+        pipeline.dataset("generations", IdWritable.class, FavoriteChange.class, inputs);
+        pipeline.stage("Compact")
+                .read("generations")
+                .map(GenerationMapper.class)
+                .reduce(LatestFavoriteReducer.class)
+                .indexed()
+                .write(newBase.toString());
+        if (pipeline.run() != 0) {
+            fs.delete(newBase, true);
+            return false;
+        }
+        for (Path p : inputs) {
+            fs.delete(p, true);
+        }
+        return true;
+    }
+
+    // The directories prefixN of the state that contain the marker file, by N.
+    private static TreeMap<Integer, Path> generations(FileSystem fs, Path state, String prefix, String marker)
+            throws IOException {
+        TreeMap<Integer, Path> found = new TreeMap<>();
+        for (FileStatus st : fs.listStatus(state)) {
+            String name = st.getPath().getName();
+            if (st.isDirectory() && name.startsWith(prefix) && fs.exists(new Path(st.getPath(), marker))) {
+                found.put(generation(name), st.getPath());
+            }
+        }
+        return found;
+    }
+
+    static String name(String prefix, int generation) {
+        return String.format("%s%05d", prefix, generation);
+    }
+
+    // The N of a users-N, base-N or counts-N directory, or -1.
+    static int generation(String name) {
+        if (!name.startsWith(USERS_DIR) && !name.startsWith(BASE_DIR) && !name.startsWith(COUNTS_DIR)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(name.substring(name.indexOf('-') + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.exit(ToolRunner.run(new Incremental(), args));
+    }
+}
+
+// Delta Reduce: compare the best new rating of each user with the favorite found in
+// the state, and keep the better one (the old one on a tie).
+// Input:  userId1|userRate movieId     (best rated first)
+//         ...
+// Output: userId1 movieId|userRate<replacedMovieId     (changed users only)
+//         ...
+class DeltaFavoriteReducer extends Reducer<UserRatingKey, IdWritable, IdWritable, FavoriteChange> {
+
+    private final List<MapFile.Reader[]> generations = new ArrayList<>();
+    private final HashPartitioner<IdWritable, FavoriteChange> partitioner = new HashPartitioner<>();
+    private final IdWritable id = new IdWritable();
+    private final FavoriteChange old = new FavoriteChange();
+    private final FavoriteChange change = new FavoriteChange();
+    private Counter newUsers;
+    private Counter changed;
+    private Counter kept;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        for (String dir : conf.getTrimmedStrings(Incremental.USERS)) {
+            generations.add(MapFileOutputFormat.getReaders(new Path(dir), conf));
+        }
+        newUsers = context.getCounter(Metrics.Updates.NEW_USERS);
+        changed = context.getCounter(Metrics.Updates.CHANGED_USERS);
+        kept = context.getCounter(Metrics.Updates.KEPT_USERS);
+    }
+
+    @Override
+    public void reduce(UserRatingKey key, Iterable<IdWritable> values, Context context) throws IOException, InterruptedException {
+        IdWritable movie = values.iterator().next();
+        id.set(key.getUserId());
+        int previous = -1;
+        for (MapFile.Reader[] readers : generations) {
+            if (MapFileOutputFormat.getEntry(readers, partitioner, id, old) != null) {
+                previous = old.getMovieId();
+                break;
+            }
+        }
+        if (previous < 0) {
+            newUsers.increment(1);
+        } else if (old.getRate() < key.getRate()) {
+            changed.increment(1);
+        } else {
+            kept.increment(1);
+            return;
+        }
+        change.set(movie.get(), key.getRate(), previous);
+        context.write(id, change);
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        for (MapFile.Reader[] readers : generations) {
+            for (MapFile.Reader r : readers) {
+                r.close();
+            }
+        }
+    }
+}
+
+// Counts Map: the old counts as they are, and a change of favorite as +1 for the new
+// movie and -1 for the replaced one.
+// Input:  movieId count                                (counts-N)
+//         userId movieId|userRate<replacedMovieId      (users-N)
+// Output: movieId count
+//         movieId 1
+//         replacedMovieId -1
+class CountChangeMapper extends Mapper<IdWritable, Writable, IdWritable, VIntWritable> {
+
+    private final static VIntWritable one = new VIntWritable(1);
+    private final static VIntWritable minusOne = new VIntWritable(-1);
+    private final IdWritable movie = new IdWritable();
+
+    @Override
+    public void map(IdWritable key, Writable value, Context context) throws IOException, InterruptedException {
+        if (!(value instanceof FavoriteChange)) {
+            context.write(key, (VIntWritable) value);
+            return;
+        }
+        FavoriteChange c = (FavoriteChange) value;
+        movie.set(c.getMovieId());
+        context.write(movie, one);
+        if (c.getPrevious() >= 0) {
+            movie.set(c.getPrevious());
+            context.write(movie, minusOne);
+        }
+    }
+}
+
+// Counts Reduce: the new frequency of each movie, without the movies that are no
+// longer anyone's favorite.
+// Input:  movieId count
+//         ...
+// Output: movieId N
+//         ...
+class CountMergeReducer extends Reducer<IdWritable, VIntWritable, IdWritable, VIntWritable> {
+
+    private final VIntWritable count = new VIntWritable();
+
+    @Override
+    public void reduce(IdWritable key, Iterable<VIntWritable> values, Context context) throws IOException, InterruptedException {
+        int sum = 0;
+        for (VIntWritable v : values) {
+            sum += v.get();
+        }
+        if (sum < 0) {
+            throw new IllegalStateException("Negative frequency " + sum + " for movie " + key.get()
+                    + ": the state does not match the deltas applied");
+        }
+        if (sum > 0) {
+            count.set(sum);
+            context.write(key, count);
+        }
+    }
+}
+
+// Table Map: key each movie by its frequency, for TitleListReducer.
+// Input:  movieId N
+//         ...
+// Output: N movieId
+//         ...
+class CountFrequencyMapper extends Mapper<IdWritable, VIntWritable, IntWritable, IdWritable> {
+
+    private final IntWritable num = new IntWritable();
+
+    @Override
+    public void map(IdWritable key, VIntWritable value, Context context) throws IOException, InterruptedException {
+        num.set(value.get());
+        context.write(num, key);
+    }
+}
+
+// Compact Map: tag the favorite with the generation of its directory.
+// Input:  userId movieId|userRate<replacedMovieId     (users-N or base-N)
+// Output: userId N|movieId|userRate
+class GenerationMapper extends Mapper<IdWritable, FavoriteChange, IdWritable, LongWritable> {
+
+    private final LongWritable favorite = new LongWritable();
+    private long generation;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        // <state>/users-N/part-r-NNNNN/data
+        Path data = ((FileSplit) context.getInputSplit()).getPath();
+        generation = Incremental.generation(data.getParent().getParent().getName());
+    }
+
+    @Override
+    public void map(IdWritable key, FavoriteChange value, Context context) throws IOException, InterruptedException {
+        favorite.set(generation << 40 | (long) value.getMovieId() << 8 | (value.getRate() & 0xFF));
+        context.write(key, favorite);
+    }
+}
+
+// Compact Reduce: keep the favorite of the newest generation.
+// Input:  userId N|movieId|userRate
+//         ...
+// Output: userId movieId|userRate
+class LatestFavoriteReducer extends Reducer<IdWritable, LongWritable, IdWritable, FavoriteChange> {
+
+    private final FavoriteChange favorite = new FavoriteChange();
+
+    @Override
+    public void reduce(IdWritable key, Iterable<LongWritable> values, Context context) throws IOException, InterruptedException {
+        long latest = Long.MIN_VALUE;
+        for (LongWritable v : values) {
+            latest = Math.max(latest, v.get());
+        }
+        favorite.set((int) (latest >>> 8 & 0xFFFFFFFFL), (byte) latest, -1);
+        context.write(key, favorite);
+    }
+}
@@ -0,0 +1,150 @@
+package app;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.LineReader;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+// One-time conversion of a MovieLens directory to the binary layout:
+//   movies.csv     -> movies.dict (MovieDictionary)
+//   ratings*.csv   -> ratings*.bin (BinaryRatings: fixed-width RatingRecords)
+// The chains read the output directory like the CSV one, but without parsing any
+// text. The movies can then only be cached, so run them with -D app.join=replicated
+// or -D app.titles=late.
+// With -D app.ingest.partition=month the ratings are split by the month they were
+// given in, under year=YYYY/month=MM/ directories, so a time window (TimeWindow) only
+// reads the months it covers.
+// Usage: app.Ingest <input dir> <output dir>
+public class Ingest extends Configured implements Tool {
+
+    public static final String PARTITION = "app.ingest.partition";
+
+    @Override
+    public int run(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: app.Ingest <input dir> <output dir>");
+            return 2;
+        }
+        Configuration conf = getConf();
+        Path input = new Path(args[0]);
+        Path output = new Path(args[1]);
+        FileSystem in = input.getFileSystem(conf);
+        FileSystem out = output.getFileSystem(conf);
+        out.mkdirs(output);
+        String partition = conf.get(PARTITION, "none");
+        if (!partition.equals("none") && !partition.equals("month")) {
+            System.err.println("Invalid " + PARTITION + "=" + partition + ", use none or month");
+            return 2;
+        }
+        boolean byMonth = partition.equals("month");
+
+        MovieDictionary movies = new MovieDictionary();
+        for (FileStatus st : in.listStatus(input)) {
+            Path p = st.getPath();
+            String name = p.getName();
+            if (name.startsWith("_") || name.startsWith(".")) {
+                continue;
+            }
+            if (name.contains("movies")) {
+                movies.load(p, conf);
+            } else {
+                String base = name.endsWith(".csv") ? name.substring(0, name.length() - 4) : name;
+                convert(p, output, base + BinaryRatings.EXTENSION, byMonth, conf);
+            }
+        }
+        try (DataOutputStream dict = new DataOutputStream(new BufferedOutputStream(
+                out.create(new Path(output, "movies" + MovieDictionary.EXTENSION), true), 1 << 16))) {
+            movies.write(dict);
+        }
+        System.err.println("movies: " + movies.size());
+        return 0;
+    }
+
+    // Write the ratings of a CSV file as RatingRecords in output/name, or in
+    // output/year=YYYY/month=MM/name when byMonth is set, skipping the header and the
+    // malformed lines.
+    static void convert(Path csvFile, Path output, String name, boolean byMonth, Configuration conf) throws IOException {
+        CsvParser csv = new CsvParser();
+        Text line = new Text();
+        RatingRecord record = new RatingRecord();
+        long written = 0;
+        long skipped = 0;
+        Map<Integer, DataOutputStream> files = new TreeMap<>();
+        DataOutputStream current = null;
+        long monthStart = 0;
+        long monthEnd = 0;
+        try (FSDataInputStream in = csvFile.getFileSystem(conf).open(csvFile)) {
+            LineReader reader = new LineReader(in, 1 << 20);
+            while (reader.readLine(line) > 0) {
+                if (!csv.parse(line)) {
+                    skipped++;
+                    continue;
+                }
+                int userId = csv.getInt(0);
+                int movieId = csv.getInt(1);
+                byte rate = csv.getRating(2);
+                long timestamp = csv.getLong(3);
+                if (userId < 0 || movieId < 0 || rate < 0 || timestamp < 0 || timestamp > 0xFFFFFFFFL) {
+                    skipped++;
+                    continue;
+                }
+                if (current == null || timestamp < monthStart || timestamp >= monthEnd) {
+                    int partition = 0;
+                    Path file = new Path(output, name);
+                    monthStart = 0;
+                    monthEnd = Long.MAX_VALUE;
+                    if (byMonth) {
+                        LocalDateTime t = LocalDateTime.ofEpochSecond(timestamp, 0, ZoneOffset.UTC);
+                        int year = t.getYear();
+                        int month = t.getMonthValue();
+                        partition = year * 100 + month;
+                        file = new Path(output, String.format("year=%04d/month=%02d/%s", year, month, name));
+                        monthStart = TimeWindow.monthStart(year, month);
+                        monthEnd = TimeWindow.monthEnd(year, month);
+                    }
+                    current = files.get(partition);
+                    if (current == null) {
+                        current = create(file, conf, byMonth ? 1 << 16 : 1 << 20);
+                        files.put(partition, current);
+                    }
+                }
+                record.set(userId, movieId, rate, (int) timestamp);
+                record.write(current);
+                written++;
+            }
+        } finally {
+            for (DataOutputStream out : files.values()) {
+                out.close();
+            }
+        }
+        System.err.println(csvFile.getName() + ": " + written + " ratings in " + files.size() + " files, "
+                + skipped + " lines skipped");
+    }
+
+    // Create a binary ratings file and write its header.
+    private static DataOutputStream create(Path file, Configuration conf, int buffer) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                file.getFileSystem(conf).create(file, true), buffer));
+        out.write(BinaryRatings.MAGIC);
+        out.writeInt(RatingRecord.SIZE);
+        return out;
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.exit(ToolRunner.run(new Ingest(), args));
+    }
+}
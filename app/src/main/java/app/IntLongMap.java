@@ -0,0 +1,132 @@
+package app;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+// Open-addressing hash map from int to long, without any object per entry: the keys
+// and the values are kept in two arrays probed linearly (12 bytes per entry, about 16
+// with the free slots). Used for the per-user and per-movie state of the aggregating reducers.
+class IntLongMap {
+
+    private static final int FREE = Integer.MIN_VALUE;
+
+    interface EntryConsumer {
+        void accept(int key, long value);
+    }
+
+    private int[] keys;
+    private long[] values;
+    private int mask;
+    private int shift;
+    private int size;
+    // the key FREE itself is stored aside
+    private boolean hasFree;
+    private long freeValue;
+
+    IntLongMap() {
+        this(1024);
+    }
+
+    IntLongMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(4, expected * 4 / 3) - 1) << 1;
+        keys = new int[capacity];
+        Arrays.fill(keys, FREE);
+        values = new long[capacity];
+        mask = capacity - 1;
+        shift = 32 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    public int size() {
+        return size + (hasFree ? 1 : 0);
+    }
+
+    // Return the value of the key, or missing if it is not in the map.
+    public long get(int key, long missing) {
+        if (key == FREE) {
+            return hasFree ? freeValue : missing;
+        }
+        int i = slot(key);
+        while (keys[i] != FREE) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return missing;
+    }
+
+    public void put(int key, long value) {
+        if (key == FREE) {
+            hasFree = true;
+            freeValue = value;
+            return;
+        }
+        int i = slot(key);
+        while (keys[i] != FREE) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > keys.length * 3 / 4) {
+            rehash(keys.length * 2);
+        }
+    }
+
+    public void forEachValue(LongConsumer action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) {
+                action.accept(values[i]);
+            }
+        }
+        if (hasFree) {
+            action.accept(freeValue);
+        }
+    }
+
+    public void forEach(EntryConsumer action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) {
+                action.accept(keys[i], values[i]);
+            }
+        }
+        if (hasFree) {
+            action.accept(FREE, freeValue);
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        size = 0;
+        hasFree = false;
+    }
+
+    private int slot(int key) {
+        // spread the consecutive ids over the table (Fibonacci hashing)
+        return (key * 0x9E3779B9) >>> shift;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new int[capacity];
+        Arrays.fill(keys, FREE);
+        values = new long[capacity];
+        mask = capacity - 1;
+        shift = 32 - Integer.numberOfTrailingZeros(capacity);
+        for (int j = 0; j < oldKeys.length; j++) {
+            int key = oldKeys[j];
+            if (key != FREE) {
+                int i = slot(key);
+                while (keys[i] != FREE) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+}
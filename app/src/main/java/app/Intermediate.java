@@ -0,0 +1,131 @@
+package app;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.compress.BZip2Codec;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.io.compress.Lz4Codec;
+import org.apache.hadoop.io.compress.SnappyCodec;
+import org.apache.hadoop.io.compress.ZStandardCodec;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.util.ReflectionUtils;
+
+// Compression of the data written between the jobs of a chain.
+// The intermediate outputs are block-compressed SequenceFiles and, optionally, the map
+// outputs are compressed before the shuffle. The codec is chosen with
+//   -D app.intermediate.codec=lz4|snappy|zstd|gzip|bzip2|deflate|none
+// and -D app.map.output.compress=true also compresses the map outputs with it.
+// A codec whose native library (or Java implementation) is not available falls back
+// to deflate, which always works with the pure Java zlib, with a warning.
+public class Intermediate {
+
+    public static final String CODEC = "app.intermediate.codec";
+    public static final String COMPRESS_MAP_OUTPUT = "app.map.output.compress";
+
+    private static final Log LOG = LogFactory.getLog(Intermediate.class);
+    private static final Map<Class<? extends CompressionCodec>, Boolean> AVAILABLE = new ConcurrentHashMap<>();
+    private static final Set<Class<? extends CompressionCodec>> WARNED = ConcurrentHashMap.newKeySet();
+
+    private Intermediate() {
+    }
+
+    // Return the codec chosen in the configuration, or null if the intermediate
+    // outputs are not compressed.
+    public static Class<? extends CompressionCodec> getCodec(Configuration conf) {
+        String name = conf.get(CODEC, "none").toLowerCase();
+        Class<? extends CompressionCodec> codec;
+        switch (name) {
+            case "none":
+                return null;
+            case "lz4":
+                codec = Lz4Codec.class;
+                break;
+            case "snappy":
+                codec = SnappyCodec.class;
+                break;
+            case "zstd":
+                codec = ZStandardCodec.class;
+                break;
+            case "gzip":
+                codec = GzipCodec.class;
+                break;
+            case "bzip2":
+                codec = BZip2Codec.class;
+                break;
+            case "deflate":
+            case "default":
+                return DefaultCodec.class;
+            default:
+                throw new IllegalArgumentException("Unknown codec " + name + " for " + CODEC);
+        }
+        if (!isAvailable(codec, conf)) {
+            if (WARNED.add(codec)) {
+                LOG.warn(CODEC + "=" + name + ": " + codec.getSimpleName()
+                        + " is not available, the intermediate outputs use deflate instead");
+            }
+            return DefaultCodec.class;
+        }
+        return codec;
+    }
+
+    // Try to compress a few bytes, so that a missing native library is detected in the
+    // driver instead of failing every task. The result is kept per codec.
+    static boolean isAvailable(Class<? extends CompressionCodec> codecClass, Configuration conf) {
+        return AVAILABLE.computeIfAbsent(codecClass, c -> probe(c, conf));
+    }
+
+    private static boolean probe(Class<? extends CompressionCodec> codecClass, Configuration conf) {
+        Compressor compressor = null;
+        try {
+            CompressionCodec codec = ReflectionUtils.newInstance(codecClass, conf);
+            compressor = CodecPool.getCompressor(codec, conf);
+            try (CompressionOutputStream out = codec.createOutputStream(new DataOutputBuffer(), compressor)) {
+                out.write(new byte[] { 1, 2, 3 });
+                out.finish();
+            }
+            return true;
+        } catch (Exception | UnsatisfiedLinkError | NoClassDefFoundError e) {
+            // no native library, or no jar of the Java implementation
+            return false;
+        } finally {
+            if (compressor != null) {
+                CodecPool.returnCompressor(compressor);
+            }
+        }
+    }
+
+    // Compress the map outputs of every job created from this configuration.
+    public static void configure(Configuration conf) {
+        Class<? extends CompressionCodec> codec = getCodec(conf);
+        if (codec != null && conf.getBoolean(COMPRESS_MAP_OUTPUT, false)) {
+            conf.setBoolean("mapreduce.map.output.compress", true);
+            conf.setClass("mapreduce.map.output.compress.codec", codec, CompressionCodec.class);
+        }
+    }
+
+    // Write the output of the job as an intermediate SequenceFile, block-compressed
+    // with the chosen codec.
+    public static void setOutput(Job job) {
+        job.setOutputFormatClass(SequenceFileOutputFormat.class);
+        Class<? extends CompressionCodec> codec = getCodec(job.getConfiguration());
+        if (codec != null) {
+            FileOutputFormat.setCompressOutput(job, true);
+            FileOutputFormat.setOutputCompressorClass(job, codec);
+            SequenceFileOutputFormat.setOutputCompressionType(job, CompressionType.BLOCK);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package app;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapreduce.Partitioner;
+
+// Key (movieId, salt, tag) of the streaming join (see SkewJoin). The ratings of a hot
+// movie are spread over several salts; the other movies only use salt 0. Keys are
+// grouped and partitioned by (movieId, salt) and the title (tag TITLE) sorts before the
+// ratings of its group, so the reducer knows the title before the first rating.
+public class JoinKey implements WritableComparable<JoinKey> {
+
+    static {
+        WritableComparator.define(JoinKey.class, new SortComparator());
+    }
+
+    private int movieId;
+    private int salt;
+    private byte tag;
+
+    public int getMovieId() {
+        return movieId;
+    }
+
+    public int getSalt() {
+        return salt;
+    }
+
+    public byte getTag() {
+        return tag;
+    }
+
+    public void set(int movieId, int salt, byte tag) {
+        this.movieId = movieId;
+        this.salt = salt;
+        this.tag = tag;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, movieId);
+        WritableUtils.writeVInt(out, salt);
+        out.writeByte(tag);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        movieId = WritableUtils.readVInt(in);
+        salt = WritableUtils.readVInt(in);
+        tag = in.readByte();
+    }
+
+    @Override
+    public int compareTo(JoinKey o) {
+        int c = Integer.compare(movieId, o.movieId);
+        if (c == 0) {
+            c = Integer.compare(salt, o.salt);
+        }
+        return c != 0 ? c : Byte.compare(tag, o.tag);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof JoinKey && compareTo((JoinKey) o) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return movieId * 31 + salt;
+    }
+
+    @Override
+    public String toString() {
+        return movieId + "#" + salt + (tag == JoinValue.TITLE ? "t" : "r");
+    }
+
+    // Compare the (movieId, salt) of two serialized keys.
+    static int compareGroups(byte[] b1, int s1, byte[] b2, int s2) {
+        int c = Integer.compare(IdWritable.readId(b1, s1), IdWritable.readId(b2, s2));
+        if (c != 0) {
+            return c;
+        }
+        return Integer.compare(IdWritable.readId(b1, s1 + WritableUtils.decodeVIntSize(b1[s1])),
+                IdWritable.readId(b2, s2 + WritableUtils.decodeVIntSize(b2[s2])));
+    }
+
+    // Sort by movieId, salt and tag, directly on the serialized bytes.
+    public static class SortComparator extends WritableComparator {
+
+        public SortComparator() {
+            super(JoinKey.class);
+        }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            int c = compareGroups(b1, s1, b2, s2);
+            return c != 0 ? c : Byte.compare(b1[s1 + l1 - 1], b2[s2 + l2 - 1]);
+        }
+    }
+
+    // Group the title and the ratings of the same (movieId, salt) in a reduce call.
+    public static class GroupComparator extends WritableComparator {
+
+        public GroupComparator() {
+            super(JoinKey.class);
+        }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            return compareGroups(b1, s1, b2, s2);
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public int compare(WritableComparable a, WritableComparable b) {
+            JoinKey x = (JoinKey) a;
+            JoinKey y = (JoinKey) b;
+            int c = Integer.compare(x.movieId, y.movieId);
+            return c != 0 ? c : Integer.compare(x.salt, y.salt);
+        }
+    }
+
+    // Send the salts of a movie to consecutive reducers, so that the ratings of a hot
+    // movie are shared by up to numPartitions reducers.
+    public static class SaltPartitioner<V> extends Partitioner<JoinKey, V> {
+
+        @Override
+        public int getPartition(JoinKey key, V value, int numPartitions) {
+            return (int) (((key.movieId & Integer.MAX_VALUE) % numPartitions + (long) key.salt) % numPartitions);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package app;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+// Value of the reduce-side join: either the title of the movie (from movies.csv)
+// or the rating of a user (from ratings.csv). Replaces the "t:"/"r:" text tags.
+public class JoinValue implements Writable {
+
+    public static final byte TITLE = 0;
+    public static final byte RATING = 1;
+
+    private byte tag;
+    private final Text title = new Text();
+    private int userId;
+    private byte rate;
+
+    public void setTitle(Text t) {
+        tag = TITLE;
+        title.set(t);
+    }
+
+    public void setRating(int userId, byte rate) {
+        tag = RATING;
+        this.userId = userId;
+        this.rate = rate;
+    }
+
+    public boolean isTitle() {
+        return tag == TITLE;
+    }
+
+    public Text getTitle() {
+        return title;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public byte getRate() {
+        return rate;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(tag);
+        if (tag == TITLE) {
+            title.write(out);
+        } else {
+            WritableUtils.writeVInt(out, userId);
+            out.writeByte(rate);
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        tag = in.readByte();
+        if (tag == TITLE) {
+            title.readFields(in);
+        } else {
+            userId = WritableUtils.readVInt(in);
+            rate = in.readByte();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return tag == TITLE ? "t:" + title : "r:" + userId + "|" + Ratings.toString(rate);
+    }
+}
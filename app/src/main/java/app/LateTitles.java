@@ -0,0 +1,260 @@
+package app;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.VIntWritable;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+
+// Late materialization of the titles in ChainFirst and ChainSec.
+// The title of a movie is only needed in the final frequency table, but the chains
+// join it in Job 1 and then copy it in every rating, favorite and frequency key of the
+// next jobs. Here every stage works on movieIds (a vint of 1 to 3 bytes instead of a
+// 20-80 byte title) and the last reducer resolves the titles with the movies file
+// shipped through the distributed cache (MovieDictionary). Job 1 is not needed: the
+// favorites are chosen directly from ratings.csv.
+// Enable it with: -D app.titles=late (app.join and app.parallel are then ignored)
+public class LateTitles {
+
+    public static final String MODE = "app.titles";
+
+    private LateTitles() {
+    }
+
+    public static boolean isEnabled(Configuration conf) {
+        return "late".equals(conf.get(MODE, "early"));
+    }
+
+    // Choose the favorite movieId of each user from the ratings.
+    public static Stage favorites(Pipeline pipeline, Configuration conf, String name, String output) {
+        Stage s = pipeline.stage(name);
+        if (Batches.isEnabled(conf)) {
+            s.read(Pipeline.RATING_BATCHES).map(BatchFavoriteIdMapper.class);
+        } else {
+            s.read(Pipeline.RATINGS).map(RatingIdMapper.class);
+        }
+        return s.partition(UserRatingKey.UserPartitioner.class)
+                .group(UserRatingKey.GroupComparator.class)
+                .reduce(FavoriteIdReducer.class)
+                .write(output);
+    }
+}
+
+// Late Second Map: key each rating by (userId, userRate), without the title.
+// Input:  ratings.csv (userId,movieId,rating,timestamp) or binary ratings
+// Output: userId1|userRate movieId
+//         userId1|userRate movieId
+//         ...
+//         userIdN|userRate movieId
+class RatingIdMapper extends Mapper<Object, Writable, UserRatingKey, IdWritable> {
+
+    private final UserRatingKey id = new UserRatingKey();
+    private final IdWritable movie = new IdWritable();
+    private RatingParser ratings;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        ratings = new RatingParser(context);
+    }
+
+    @Override
+    public void map(Object key, Writable value, Context context) throws IOException, InterruptedException {
+        if (!ratings.parse(key, value)) {
+            return;
+        }
+        id.set(ratings.getUserId(), ratings.getRate());
+        movie.set(ratings.getMovieId());
+        context.write(id, movie);
+    }
+}
+
+// Late Second Reduce: chose one random best rated movie per user (like SecondReducer).
+// Input:  userId1|userRate movieId
+//         ...
+// Output: userId1 movieId1
+//         userId2 movieId2
+//         ...
+class FavoriteIdReducer extends Reducer<UserRatingKey, IdWritable, IdWritable, IdWritable> {
+
+    private final IdWritable id = new IdWritable();
+
+    @Override
+    public void reduce(UserRatingKey key, Iterable<IdWritable> values, Context context) throws IOException, InterruptedException {
+        IdWritable movie = values.iterator().next();
+        id.set(key.getUserId());
+        context.write(id, movie);
+    }
+}
+
+// Late Third Map: emit a count of 1 for the favorite movieId of each user.
+// Input:  userId1 movieId1
+//         ...
+// Output: movieId1 1
+//         ...
+class FreqIdMapper extends Mapper<IdWritable, IdWritable, IdWritable, VIntWritable> {
+
+    private final static VIntWritable one = new VIntWritable(1);
+
+    @Override
+    public void map(IdWritable key, IdWritable value, Context context) throws IOException, InterruptedException {
+        context.write(value, one);
+    }
+}
+
+// Late Third Reduce: compute the frequency of each movieId (like ThirdReducer).
+// Input:  movieId1 count
+//         ...
+// Output: N1 movieId1
+//         ...
+class CountIdReducer extends Reducer<IdWritable, VIntWritable, IntWritable, IdWritable> {
+
+    private final IntWritable num = new IntWritable();
+
+    @Override
+    public void reduce(IdWritable key, Iterable<VIntWritable> values, Context context) throws IOException, InterruptedException {
+        int sum = 0;
+        for (VIntWritable v : values) {
+            sum += v.get();
+        }
+        num.set(sum);
+        context.write(num, key);
+    }
+}
+
+// Late Fourth Reduce: resolve the titles and concatenate them (like FourthReducer).
+// The movies file must be cached by the stage. The movies that are not in it are
+// counted as join misses and left out.
+// Input:  1 movieId1
+//         2 movieId2
+//         2 movieId3
+//         ...
+// Output: 1 movieTitle1
+//         2 movieTitle2 movieTitle3
+//         ...
+class TitleListReducer extends Reducer<IntWritable, IdWritable, Text, Text> {
+
+    private MovieDictionary movies;
+    private Counter misses;
+    private final Text id = new Text();
+    private final Text title = new Text();
+    private final Text ret = new Text();
+    private final DataOutputBuffer list = new DataOutputBuffer();
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        movies = MovieDictionary.fromCache(context.getCacheFiles(), context.getConfiguration());
+        misses = context.getCounter(Metrics.Records.JOIN_MISSES);
+    }
+
+    @Override
+    public void reduce(IntWritable key, Iterable<IdWritable> values, Context context) throws IOException, InterruptedException {
+        list.reset();
+        for (IdWritable m : values) {
+            if (!movies.get(m.get(), title)) {
+                misses.increment(key.get());
+                continue;
+            }
+            if (list.getLength() > 0) {
+                list.write(' ');
+            }
+            list.write(title.getBytes(), 0, title.getLength());
+        }
+        if (list.getLength() == 0) {
+            return;
+        }
+        id.set(Integer.toString(key.get()));
+        ret.set(list.getData(), 0, list.getLength());
+        context.write(id, ret);
+    }
+}
+
+// Late Third Map of ChainSec: send every favorite movieId under the key "1".
+// Input:  userId1 movieId1
+//         ...
+// Output: 1 movieId1
+//         ...
+class SimpleIdMap extends Mapper<IdWritable, IdWritable, Text, IdWritable> {
+
+    private final static Text one = new Text("1");
+
+    @Override
+    public void map(IdWritable key, IdWritable value, Context context) throws IOException, InterruptedException {
+        context.write(one, value);
+    }
+}
+
+// Late Third Reduce of ChainSec: count the favorites per movieId, then show the
+// frequencies in ascending order with the titles resolved from the cached movies file
+// (like AscendReduce). The state is one entry per movie.
+// Input:  1 movieId1
+//         1 movieId2
+//         ...
+// Output: N1 movieTitle1
+//         N2 movieTitle2
+//         ...
+class AscendIdReduce extends Reducer<Text, IdWritable, IntWritable, Text> {
+
+    private MovieDictionary movies;
+    private Counter misses;
+    private final IntWritable num = new IntWritable();
+    private final Text title = new Text();
+    private final Text content = new Text();
+    private final DataOutputBuffer list = new DataOutputBuffer();
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        movies = MovieDictionary.fromCache(context.getCacheFiles(), context.getConfiguration());
+        misses = context.getCounter(Metrics.Records.JOIN_MISSES);
+    }
+
+    @Override
+    public void reduce(Text key, Iterable<IdWritable> values, Context context) throws IOException, InterruptedException {
+        IntLongMap freq = new IntLongMap();
+        for (IdWritable m : values) {
+            freq.put(m.get(), freq.get(m.get(), 0) + 1);
+        }
+
+        // sort the movies by frequency: (frequency << 32) | movieId, or only keep the
+        // K most frequent ones in top-K mode
+        long[] order;
+        Configuration conf = context.getConfiguration();
+        if (TopK.isEnabled(conf)) {
+            TopKHeap top = new TopKHeap(TopK.get(conf));
+            freq.forEach((movieId, count) -> top.offer(count << 32 | (movieId & 0xFFFFFFFFL)));
+            order = top.sorted(TopK.isDescending(conf));
+        } else {
+            long[] all = new long[freq.size()];
+            int[] n = { 0 };
+            freq.forEach((movieId, count) -> all[n[0]++] = count << 32 | (movieId & 0xFFFFFFFFL));
+            Arrays.sort(all);
+            order = all;
+        }
+
+        for (int i = 0; i < order.length;) {
+            int f = (int) (order[i] >>> 32);
+            list.reset();
+            for (; i < order.length && (int) (order[i] >>> 32) == f; i++) {
+                if (!movies.get((int) order[i], title)) {
+                    misses.increment(f);
+                    continue;
+                }
+                if (list.getLength() > 0) {
+                    list.write(' ');
+                }
+                list.write(title.getBytes(), 0, title.getLength());
+            }
+            if (list.getLength() > 0) {
+                num.set(f);
+                content.set(list.getData(), 0, list.getLength());
+                context.write(num, content);
+            }
+        }
+    }
+}
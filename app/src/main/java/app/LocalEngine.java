@@ -0,0 +1,339 @@
+package app;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileAlreadyExistsException;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+// Objective: the favorite frequencies of ChainFirst and ChainTer, computed in a single
+// JVM without any MapReduce job, for the datasets that fit on one machine (the job
+// startups otherwise cost more than the computation).
+// Solution: the ratings files are memory-mapped (FileChannel.map) and cut in chunks;
+// a fork/join pool parses the chunks in parallel, joins each rating with the movies
+// held in memory (MovieDictionary) and keeps the favorite of each user in a
+// FavoriteTable, the core of AllReducer. The tables of the chunks are merged up the
+// fork/join tree, then counted and written in ascending order like AllReducer:
+// <output>/part-r-00000 holds the same "N movieTitle1 movieTitle2 ..." lines.
+// It reads the CSV and the binary input of Ingest, keeps the time window of
+// TimeWindow and the top-K mode (TopK), and only runs on local files. With
+// -D app.report=<path> the timings and the Metrics.Records counts are written to a
+// JSON report like the one of the chains (PipelineReport).
+// Usage: app.LocalEngine [-D app.local.threads=N] <input dir> <output dir>
+public class LocalEngine extends Configured implements Tool {
+
+    public static final String THREADS = "app.local.threads";
+    private static final long MAX_CHUNK = 64 << 20;
+
+    // A range of a ratings file: it owns the lines (or the records) starting in
+    // [start, end).
+    static class Chunk {
+        final File file;
+        final boolean binary;
+        final long start;
+        final long end;
+
+        Chunk(File file, boolean binary, long start, long end) {
+            this.file = file;
+            this.binary = binary;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private MovieDictionary movies;
+    // the title index of the movie at each position of movies
+    private int[] items;
+    private TimeWindow window;
+    private final AtomicLongArray records = new AtomicLongArray(Metrics.Records.values().length);
+
+    @Override
+    public int run(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: app.LocalEngine <input dir> <output dir>");
+            return 2;
+        }
+        Configuration conf = getConf();
+        Path output = new Path(args[1]);
+        FileSystem out = output.getFileSystem(conf);
+        if (out.exists(output)) {
+            throw new FileAlreadyExistsException("Output directory " + output + " already exists");
+        }
+        long begin = System.nanoTime();
+        PipelineReport report = PipelineReport.isEnabled(conf) ? new PipelineReport(conf, "LocalEngine") : null;
+        Pipeline sources = new Pipeline(conf, LocalEngine.class).sources(new Path(args[0]));
+        window = TimeWindow.get(conf);
+
+        // the movies, with the movies of the same title counted together like in AllReducer
+        movies = new MovieDictionary();
+        for (Path p : sources.paths(Pipeline.MOVIES)) {
+            movies.load(p, conf);
+        }
+        TitleDictionary titles = new TitleDictionary();
+        Text title = new Text();
+        items = new int[movies.size()];
+        for (int i = 0; i < movies.size(); i++) {
+            movies.getAt(i, title);
+            items[i] = titles.intern(title);
+        }
+
+        int threads = conf.getInt(THREADS, Runtime.getRuntime().availableProcessors());
+        List<Chunk> chunks = chunks(sources.paths(Pipeline.RATINGS), threads);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        FavoriteTable favorites;
+        try {
+            favorites = chunks.isEmpty() ? new FavoriteTable() : pool.invoke(new Scan(chunks, 0, chunks.size()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+        long scanned = System.nanoTime();
+
+        int[] freq = favorites.count(titles.size());
+        long[] order = TopK.isEnabled(conf) ? TopK.select(freq, conf) : FavoriteTable.ascending(freq);
+        FavoriteTable.writeText(order, titles, out, new Path(output, "part-r-00000"));
+        out.create(new Path(output, "_SUCCESS")).close();
+
+        if (report != null) {
+            Map<String, Object> metrics = new LinkedHashMap<>();
+            for (Metrics.Records r : Metrics.Records.values()) {
+                metrics.put(r.name(), records.get(r.ordinal()));
+            }
+            Map<String, Object> step = new LinkedHashMap<>();
+            step.put("name", "Local");
+            step.put("succeeded", true);
+            step.put("startMs", 0);
+            step.put("durationMs", (System.nanoTime() - begin) / 1000000);
+            step.put("scanMs", (scanned - begin) / 1000000);
+            step.put("chunks", chunks.size());
+            step.put("threads", threads);
+            step.put("users", favorites.size());
+            step.put("titles", titles.size());
+            step.put("metrics", metrics);
+            report.add(step);
+            report.write(true);
+        }
+        return 0;
+    }
+
+    // Cut the ratings files in about 4 chunks per thread, of at most MAX_CHUNK bytes.
+    private static List<Chunk> chunks(List<Path> ratings, int threads) throws IOException {
+        List<File> files = new ArrayList<>();
+        long total = 0;
+        for (Path p : ratings) {
+            if (p.toUri().getScheme() != null && !p.toUri().getScheme().equals("file")) {
+                throw new IOException(p + " is not a local file, LocalEngine only reads local files");
+            }
+            File f = new File(p.toUri().getPath());
+            files.add(f);
+            total += f.length();
+        }
+        long size = Math.max(1 << 20, Math.min(MAX_CHUNK, total / (threads * 4L) + 1));
+        List<Chunk> chunks = new ArrayList<>();
+        for (File f : files) {
+            boolean binary = f.getName().endsWith(BinaryRatings.EXTENSION);
+            long length = f.length();
+            long start = 0;
+            if (binary) {
+                checkHeader(f);
+                start = BinaryRatings.HEADER;
+            }
+            for (; start < length; start += size) {
+                chunks.add(new Chunk(f, binary, start, Math.min(length, start + size)));
+            }
+        }
+        return chunks;
+    }
+
+    private static void checkHeader(File f) throws IOException {
+        try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(ch.size(), BinaryRatings.HEADER));
+            byte[] header = new byte[buf.remaining()];
+            buf.get(header);
+            if (header.length < BinaryRatings.HEADER
+                    || !Arrays.equals(Arrays.copyOf(header, BinaryRatings.MAGIC.length), BinaryRatings.MAGIC)
+                    || buf.getInt(BinaryRatings.MAGIC.length) != RatingRecord.SIZE) {
+                throw new IOException(f + " is not a binary ratings file");
+            }
+            if ((ch.size() - BinaryRatings.HEADER) % RatingRecord.SIZE != 0) {
+                throw new IOException(f + " is truncated");
+            }
+        }
+    }
+
+    // Scan the chunks lo..hi-1: one chunk is scanned in place, more are split in two
+    // halves scanned in parallel, then the smaller table is merged into the larger.
+    private class Scan extends RecursiveTask<FavoriteTable> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Chunk> chunks;
+        private final int lo;
+        private final int hi;
+
+        Scan(List<Chunk> chunks, int lo, int hi) {
+            this.chunks = chunks;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected FavoriteTable compute() {
+            if (hi - lo == 1) {
+                try {
+                    return scan(chunks.get(lo));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            int mid = (lo + hi) >>> 1;
+            Scan left = new Scan(chunks, lo, mid);
+            left.fork();
+            FavoriteTable b = new Scan(chunks, mid, hi).compute();
+            FavoriteTable a = left.join();
+            if (a.size() < b.size()) {
+                b.merge(a);
+                return b;
+            }
+            a.merge(b);
+            return a;
+        }
+    }
+
+    FavoriteTable scan(Chunk chunk) throws IOException {
+        FavoriteTable favorites = new FavoriteTable();
+        long[] counts = new long[records.length()];
+        try (FileChannel ch = FileChannel.open(chunk.file.toPath(), StandardOpenOption.READ)) {
+            if (chunk.binary) {
+                scanRecords(ch, chunk, favorites, counts);
+            } else {
+                scanLines(ch, chunk, favorites, counts);
+            }
+        }
+        for (int i = 0; i < counts.length; i++) {
+            records.addAndGet(i, counts[i]);
+        }
+        return favorites;
+    }
+
+    // The fixed-width records starting in the chunk, decoded from the mapped file.
+    private void scanRecords(FileChannel ch, Chunk chunk, FavoriteTable favorites, long[] counts) throws IOException {
+        long first = BinaryRatings.Reader.align(chunk.start);
+        long end = Math.min(ch.size(), BinaryRatings.Reader.align(chunk.end));
+        if (first >= end) {
+            return;
+        }
+        MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, first, end - first);
+        for (int off = 0; off < buf.limit(); off += RatingRecord.SIZE) {
+            rating(buf.getInt(off), buf.getInt(off + 4), buf.get(off + 8), buf.getInt(off + 9) & 0xFFFFFFFFL,
+                    favorites, counts);
+        }
+    }
+
+    // The lines starting in the chunk (like LineRecordReader, the line running over
+    // the start belongs to the previous chunk), copied from the mapped file in blocks
+    // and parsed in place with CsvParser.
+    private void scanLines(FileChannel ch, Chunk chunk, FavoriteTable favorites, long[] counts) throws IOException {
+        long base = Math.max(0, chunk.start - 1);
+        MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, base, Math.min(ch.size() - base, Integer.MAX_VALUE));
+        CsvParser csv = new CsvParser();
+        byte[] block = new byte[1 << 20];
+        int n = 0;
+        int line = 0;
+        int scan = 0;
+        long offset = base;
+        boolean eof = false;
+        if (chunk.start > 0) {
+            // skip to the first line starting at or after chunk.start
+            while (buf.hasRemaining() && buf.get() != '\n') {
+                offset++;
+            }
+            offset++;
+        }
+        while (offset < chunk.end) {
+            int nl = scan;
+            while (nl < n && block[nl] != '\n') {
+                nl++;
+            }
+            if (nl == n) {
+                if (eof) {
+                    if (line < n) {
+                        line(csv, block, line, n - line, offset, favorites, counts);
+                    }
+                    break;
+                }
+                // keep the start of the line and read the next block after it
+                System.arraycopy(block, line, block, 0, n - line);
+                n -= line;
+                line = 0;
+                scan = n;
+                if (n == block.length) {
+                    block = Arrays.copyOf(block, n * 2);
+                }
+                int r = Math.min(block.length - n, buf.remaining());
+                buf.get(block, n, r);
+                n += r;
+                eof = !buf.hasRemaining();
+                continue;
+            }
+            line(csv, block, line, nl - line, offset, favorites, counts);
+            offset += nl + 1 - line;
+            line = nl + 1;
+            scan = line;
+        }
+    }
+
+    // userId,movieId,rating,timestamp, checked like RatingParser.
+    private void line(CsvParser csv, byte[] b, int off, int len, long offset, FavoriteTable favorites, long[] counts) {
+        if (!csv.parse(b, off, len)) {
+            counts[Metrics.Records.SKIPPED.ordinal()]++;
+            return;
+        }
+        int userId = csv.getInt(0);
+        int movieId = csv.getInt(1);
+        byte rate = csv.getRating(2);
+        if (userId < 0 || movieId < 0 || rate < 0) {
+            counts[(offset == 0 ? Metrics.Records.SKIPPED : Metrics.Records.MALFORMED).ordinal()]++;
+            return;
+        }
+        rating(userId, movieId, rate, window.isAll() ? 0 : csv.getLong(3), favorites, counts);
+    }
+
+    // Join a rating with its movie and offer it as the favorite of the user.
+    private void rating(int userId, int movieId, byte rate, long timestamp, FavoriteTable favorites, long[] counts) {
+        counts[Metrics.Records.PARSED.ordinal()]++;
+        if (!window.contains(timestamp)) {
+            counts[Metrics.Records.OUT_OF_WINDOW.ordinal()]++;
+            return;
+        }
+        int i = movies.indexOf(movieId);
+        if (i < 0) {
+            counts[Metrics.Records.JOIN_MISSES.ordinal()]++;
+            return;
+        }
+        favorites.offer(userId, items[i], rate);
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.exit(ToolRunner.run(new LocalEngine(), args));
+    }
+}
@@ -0,0 +1,184 @@
+package app;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.apache.hadoop.util.ReflectionUtils;
+
+// Hadoop counters of the application. They are shown with the job counters and
+// collected in the JSON report of the run (-D app.report=<path>, see PipelineReport).
+// The per-task timing is optional (-D app.metrics.tasks=true): every mapper and
+// reducer is then run by TimedMapper/TimedReducer, which add the wall time, the GC
+// time and the bytes allocated by the task thread to the Tasks counters.
+public class Metrics {
+
+    public static final String TASKS = "app.metrics.tasks";
+    public static final String LARGE_GROUP = "app.metrics.large.group";
+    static final String MAPPER = "app.metrics.mapper.class";
+    static final String REDUCER = "app.metrics.reducer.class";
+
+    // Lines of the CSV files read by the mappers. SKIPPED are the empty lines and the
+    // headers, MALFORMED the other lines that are not a movie or a rating, and
+    // JOIN_MISSES the ratings of a movie without a title. OUT_OF_WINDOW are the ratings
+    // outside the time window (app.time.from / app.time.to, see TimeWindow).
+    public enum Records {
+        PARSED, SKIPPED, MALFORMED, JOIN_MISSES, OUT_OF_WINDOW
+    }
+
+    // Groups of the join reducers (the ratings of one movie). A group is large when it
+    // has at least app.metrics.large.group values (default 100000): it is the work of
+    // a single reduce call, so a few of them are enough to make a straggler.
+    public enum Groups {
+        GROUPS, VALUES, LARGE_GROUPS, LARGE_GROUP_VALUES
+    }
+
+    // Users of the delta applied by Incremental: without a favorite yet, with a new
+    // favorite, or keeping their favorite.
+    public enum Updates {
+        NEW_USERS, CHANGED_USERS, KEPT_USERS
+    }
+
+    // Sorted runs written to the local disk by the reducers over their memory budget
+    // (app.spill.memory, see Spill), with their records and bytes.
+    public enum Spills {
+        RUNS, RECORDS, BYTES
+    }
+
+    public enum Tasks {
+        MAP_TASKS, MAP_MILLIS, MAP_GC_MILLIS, MAP_ALLOCATED_BYTES,
+        REDUCE_TASKS, REDUCE_MILLIS, REDUCE_GC_MILLIS, REDUCE_ALLOCATED_BYTES
+    }
+
+    private Metrics() {
+    }
+
+    public static boolean isTimed(Configuration conf) {
+        return conf.getBoolean(TASKS, false);
+    }
+
+    // Run the mapper and the reducer of the job through the timed wrappers.
+    static void time(Job job) {
+        Configuration conf = job.getConfiguration();
+        try {
+            conf.setClass(MAPPER, job.getMapperClass(), Mapper.class);
+            job.setMapperClass(TimedMapper.class);
+            if (job.getNumReduceTasks() > 0) {
+                conf.setClass(REDUCER, job.getReducerClass(), Reducer.class);
+                job.setReducerClass(TimedReducer.class);
+            }
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Only the first line of a file can be the header (when it is not a record).
+    static boolean isHeader(Object key) {
+        return key instanceof LongWritable && ((LongWritable) key).get() == 0;
+    }
+
+    // Sample of the time, GC time and allocation of the current task.
+    static class Sample {
+        private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+        private final long start = System.currentTimeMillis();
+        private final long gc = gcMillis();
+        private final long allocated = allocatedBytes();
+
+        // Add the usage since the sample to the counters of the map or reduce tasks.
+        void stop(TaskInputOutputContext<?, ?, ?, ?> context, boolean map) {
+            context.getCounter(map ? Tasks.MAP_TASKS : Tasks.REDUCE_TASKS).increment(1);
+            context.getCounter(map ? Tasks.MAP_MILLIS : Tasks.REDUCE_MILLIS)
+                    .increment(System.currentTimeMillis() - start);
+            // the GC time is the one of the whole JVM, shared by the tasks of the
+            // local job runner
+            context.getCounter(map ? Tasks.MAP_GC_MILLIS : Tasks.REDUCE_GC_MILLIS).increment(gcMillis() - gc);
+            if (allocated >= 0) {
+                context.getCounter(map ? Tasks.MAP_ALLOCATED_BYTES : Tasks.REDUCE_ALLOCATED_BYTES)
+                        .increment(allocatedBytes() - allocated);
+            }
+        }
+
+        private static long gcMillis() {
+            long t = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                t += Math.max(0, gc.getCollectionTime());
+            }
+            return t;
+        }
+
+        // Bytes allocated by this thread, or -1 if the JVM does not tell.
+        private static long allocatedBytes() {
+            if (THREADS instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean t = (com.sun.management.ThreadMXBean) THREADS;
+                if (t.isThreadAllocatedMemorySupported() && t.isThreadAllocatedMemoryEnabled()) {
+                    return t.getThreadAllocatedBytes(Thread.currentThread().getId());
+                }
+            }
+            return -1;
+        }
+    }
+}
+
+// Count the groups and their sizes in a reducer.
+class GroupCounter {
+
+    private final Counter groups;
+    private final Counter values;
+    private final Counter largeGroups;
+    private final Counter largeValues;
+    private final int large;
+
+    GroupCounter(TaskInputOutputContext<?, ?, ?, ?> context) {
+        groups = context.getCounter(Metrics.Groups.GROUPS);
+        values = context.getCounter(Metrics.Groups.VALUES);
+        largeGroups = context.getCounter(Metrics.Groups.LARGE_GROUPS);
+        largeValues = context.getCounter(Metrics.Groups.LARGE_GROUP_VALUES);
+        large = context.getConfiguration().getInt(Metrics.LARGE_GROUP, 100000);
+    }
+
+    void add(int n) {
+        groups.increment(1);
+        values.increment(n);
+        if (n >= large) {
+            largeGroups.increment(1);
+            largeValues.increment(n);
+        }
+    }
+}
+
+// Run the mapper of the job (app.metrics.mapper.class) and time it.
+@SuppressWarnings({ "rawtypes", "unchecked" })
+class TimedMapper extends Mapper {
+
+    @Override
+    public void run(Context context) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        Mapper m = ReflectionUtils.newInstance(conf.getClass(Metrics.MAPPER, Mapper.class, Mapper.class), conf);
+        Metrics.Sample sample = new Metrics.Sample();
+        m.run(context);
+        sample.stop(context, true);
+    }
+}
+
+// Run the reducer of the job (app.metrics.reducer.class) and time it.
+@SuppressWarnings({ "rawtypes", "unchecked" })
+class TimedReducer extends Reducer {
+
+    @Override
+    public void run(Context context) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        Reducer r = ReflectionUtils.newInstance(conf.getClass(Metrics.REDUCER, Reducer.class, Reducer.class), conf);
+        Metrics.Sample sample = new Metrics.Sample();
+        r.run(context);
+        sample.stop(context, false);
+    }
+}
@@ -0,0 +1,266 @@
+package app;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.LineReader;
+
+// Compact in-memory copy of movies.csv: movieId -> title and genres.
+// The ids are kept sorted in a single int[] and all the titles are stored as UTF-8
+// in one byte[] (offsets[i]..offsets[i+1] is the title of ids[i]), the genres the same
+// way, so a table of ~60k movies costs a few MB and no object per entry.
+// Ingest saves it as movies.dict, which loads with a few bulk reads instead of
+// parsing movies.csv in every task.
+// load() sorts the ids when it is done (after add(), call sort()), so the lookups and
+// the positions 0..size-1 do not change anymore and the dictionary can be read by
+// several threads.
+class MovieDictionary {
+
+    public static final String EXTENSION = ".dict";
+    private static final int MAGIC = 0x4D4C4432; // "MLD2"
+    private static final Text NO_GENRES = new Text();
+
+    private int[] ids = new int[1024];
+    private int[] offsets = new int[1025];
+    private byte[] titles = new byte[1 << 16];
+    private int[] genreOffsets = new int[1025];
+    private byte[] genres = new byte[1 << 14];
+    private int size = 0;
+    private boolean sorted = true;
+
+    public int size() {
+        return size;
+    }
+
+    public void add(int id, Text title) {
+        add(id, title, NO_GENRES);
+    }
+
+    // Add a movie. The lines of movies.csv are normally sorted by movieId, so the
+    // ids arrive in order and sort() has nothing to do.
+    public void add(int id, Text title, Text genreList) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            offsets = Arrays.copyOf(offsets, size * 2 + 1);
+            genreOffsets = Arrays.copyOf(genreOffsets, size * 2 + 1);
+        }
+        titles = append(titles, offsets, title);
+        genres = append(genres, genreOffsets, genreList);
+        if (size > 0 && ids[size - 1] >= id) {
+            sorted = false;
+        }
+        ids[size] = id;
+        size++;
+    }
+
+    // Copy t at the end of blob and set the end offset of the new entry.
+    private byte[] append(byte[] blob, int[] ends, Text t) {
+        int start = ends[size];
+        int len = t.getLength();
+        if (start + len > blob.length) {
+            blob = Arrays.copyOf(blob, Math.max(blob.length * 2, start + len));
+        }
+        System.arraycopy(t.getBytes(), 0, blob, start, len);
+        ends[size + 1] = start + len;
+        return blob;
+    }
+
+    // Set out to the title of the movie, without creating any String.
+    // Return false if the movie is not in the dictionary.
+    public boolean get(int id, Text out) {
+        int i = indexOf(id);
+        if (i < 0) {
+            return false;
+        }
+        out.set(titles, offsets[i], offsets[i + 1] - offsets[i]);
+        return true;
+    }
+
+    // Set out to the title at a position returned by indexOf (or any position
+    // 0..size-1, in the order of the ids).
+    public void getAt(int index, Text out) {
+        out.set(titles, offsets[index], offsets[index + 1] - offsets[index]);
+    }
+
+    // Set out to the genres of the movie at a position returned by indexOf, as in
+    // movies.csv ("Adventure|Animation|Children").
+    public void getGenresAt(int index, Text out) {
+        out.set(genres, genreOffsets[index], genreOffsets[index + 1] - genreOffsets[index]);
+    }
+
+    public String get(int id) {
+        int i = indexOf(id);
+        if (i < 0) {
+            return null;
+        }
+        return new String(titles, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+    }
+
+    public int indexOf(int id) {
+        if (!sorted) {
+            throw new IllegalStateException("The movie dictionary is not sorted");
+        }
+        int i = Arrays.binarySearch(ids, 0, size, id);
+        return i < 0 ? -1 : i;
+    }
+
+    // Sort the movies by id, if they were not added in order.
+    public void sort() {
+        if (sorted) {
+            return;
+        }
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(ids[a], ids[b]));
+        int[] newIds = new int[ids.length];
+        for (int i = 0; i < size; i++) {
+            newIds[i] = ids[order[i]];
+        }
+        ids = newIds;
+        int[] newOffsets = new int[offsets.length];
+        titles = permute(order, titles, offsets, newOffsets);
+        offsets = newOffsets;
+        newOffsets = new int[genreOffsets.length];
+        genres = permute(order, genres, genreOffsets, newOffsets);
+        genreOffsets = newOffsets;
+        sorted = true;
+    }
+
+    private byte[] permute(Integer[] order, byte[] blob, int[] ends, int[] newEnds) {
+        byte[] newBlob = new byte[blob.length];
+        for (int i = 0; i < size; i++) {
+            int j = order[i];
+            int len = ends[j + 1] - ends[j];
+            System.arraycopy(blob, ends[j], newBlob, newEnds[i], len);
+            newEnds[i + 1] = newEnds[i] + len;
+        }
+        return newBlob;
+    }
+
+    // Parse one line of movies.csv (movieId,title,genres) the same way MovieMapper does.
+    public void addLine(CsvParser csv, Text line, Text title, Text genreList) {
+        if (!csv.parse(line)) {
+            return;
+        }
+        int movieId = csv.getInt(0);
+        if (movieId < 0 || csv.fields() < 2) {
+            return;
+        }
+        csv.getMovieTitle(title);
+        if (csv.fields() > 2) {
+            csv.getText(csv.fields() - 1, genreList);
+        } else {
+            genreList.clear();
+        }
+        add(movieId, title, genreList);
+    }
+
+    public void load(Path p, Configuration conf) throws IOException {
+        FileSystem fs = p.getFileSystem(conf);
+        if (p.getName().endsWith(EXTENSION)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(fs.open(p), 1 << 16))) {
+                read(p, in);
+            }
+            sort();
+            return;
+        }
+        CsvParser csv = new CsvParser();
+        Text line = new Text();
+        Text title = new Text();
+        Text genreList = new Text();
+        try (FSDataInputStream in = fs.open(p)) {
+            LineReader reader = new LineReader(in, conf);
+            while (reader.readLine(line) > 0) {
+                addLine(csv, line, title, genreList);
+            }
+        }
+        sort();
+    }
+
+    // Write the dictionary as movies.dict: the magic, the number of movies, the sorted
+    // ids, then the offsets and the bytes of the titles and of the genres.
+    public void write(DataOutputStream out) throws IOException {
+        sort();
+        out.writeInt(MAGIC);
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeInt(ids[i]);
+        }
+        writeBlob(out, titles, offsets);
+        writeBlob(out, genres, genreOffsets);
+    }
+
+    private void writeBlob(DataOutputStream out, byte[] blob, int[] ends) throws IOException {
+        for (int i = 0; i <= size; i++) {
+            out.writeInt(ends[i]);
+        }
+        out.write(blob, 0, ends[size]);
+    }
+
+    private void read(Path p, DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException(p + " is not a movie dictionary");
+        }
+        int n = in.readInt();
+        int[] newIds = new int[n];
+        for (int i = 0; i < n; i++) {
+            newIds[i] = in.readInt();
+        }
+        int[] newOffsets = new int[n + 1];
+        byte[] newTitles = readBlob(in, newOffsets);
+        int[] newGenreOffsets = new int[n + 1];
+        byte[] newGenres = readBlob(in, newGenreOffsets);
+        if (size == 0 && n > 0) {
+            ids = newIds;
+            offsets = newOffsets;
+            titles = newTitles;
+            genreOffsets = newGenreOffsets;
+            genres = newGenres;
+            size = n;
+            return;
+        }
+        Text title = new Text();
+        Text genreList = new Text();
+        for (int i = 0; i < n; i++) {
+            title.set(newTitles, newOffsets[i], newOffsets[i + 1] - newOffsets[i]);
+            genreList.set(newGenres, newGenreOffsets[i], newGenreOffsets[i + 1] - newGenreOffsets[i]);
+            add(newIds[i], title, genreList);
+        }
+    }
+
+    private static byte[] readBlob(DataInputStream in, int[] ends) throws IOException {
+        for (int i = 0; i < ends.length; i++) {
+            ends[i] = in.readInt();
+        }
+        byte[] blob = new byte[ends[ends.length - 1]];
+        in.readFully(blob);
+        return blob;
+    }
+
+    // Load every movies file shipped through the distributed cache.
+    public static MovieDictionary fromCache(URI[] files, Configuration conf) throws IOException {
+        MovieDictionary dict = new MovieDictionary();
+        if (files == null) {
+            return dict;
+        }
+        for (URI u : files) {
+            Path p = new Path(u);
+            if (p.getName().contains("movies")) {
+                dict.load(p, conf);
+            }
+        }
+        return dict;
+    }
+}
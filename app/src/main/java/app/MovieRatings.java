@@ -0,0 +1,92 @@
+package app;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+// Title of a movie and all the ratings it got: (userId, rate) pairs kept in two
+// parallel arrays. Replaces "movieTitle userId|userRate,userId|userRate,...".
+public class MovieRatings implements Writable {
+
+    private final Text title = new Text();
+    private int size = 0;
+    private int[] users = new int[16];
+    private byte[] rates = new byte[16];
+
+    public Text getTitle() {
+        return title;
+    }
+
+    public void setTitle(Text t) {
+        title.set(t);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getUser(int i) {
+        return users[i];
+    }
+
+    public byte getRate(int i) {
+        return rates[i];
+    }
+
+    public void clear() {
+        title.clear();
+        size = 0;
+    }
+
+    public void add(int userId, byte rate) {
+        if (size == users.length) {
+            grow(size * 2);
+        }
+        users[size] = userId;
+        rates[size] = rate;
+        size++;
+    }
+
+    private void grow(int capacity) {
+        users = Arrays.copyOf(users, capacity);
+        rates = Arrays.copyOf(rates, capacity);
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        title.write(out);
+        WritableUtils.writeVInt(out, size);
+        for (int i = 0; i < size; i++) {
+            WritableUtils.writeVInt(out, users[i]);
+            out.writeByte(rates[i]);
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        title.readFields(in);
+        size = WritableUtils.readVInt(in);
+        if (size > users.length) {
+            grow(size);
+        }
+        for (int i = 0; i < size; i++) {
+            users[i] = WritableUtils.readVInt(in);
+            rates[i] = in.readByte();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(title).append('=');
+        for (int i = 0; i < size; i++) {
+            sb.append(users[i]).append('|').append(Ratings.toString(rates[i])).append(',');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,134 @@
+package app;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.VIntWritable;
+import org.apache.hadoop.mapreduce.Reducer;
+
+// Parallel variant of the last jobs of ChainSec and ChainTer.
+// SimpleMap and ReducerOne send everything under the key "1", so AscendReduce and
+// AllReducer always run in a single reduce task. Here the favorite of each user is
+// chosen by N reducers partitioned by userId (use -D mapreduce.job.reduces=N), each
+// reducer counts the favorites of its own users, and only the small table of partial
+// counts per movie is merged by a single reducer at the end.
+// Enable it with: -D app.parallel=true
+public class ParallelCount {
+
+    public static final String PARALLEL = "app.parallel";
+
+    public static boolean isEnabled(Configuration conf) {
+        return conf.getBoolean(PARALLEL, false);
+    }
+
+    // Choose the favorite of each user and count the favorites in parallel.
+    // The stage must already read the ratings with UserMapper or ReplicatedJoinMapper
+    // (or the output of StreamUserReducer).
+    public static Stage favorites(Stage s, String output) {
+        return s.partition(UserRatingKey.UserPartitioner.class)
+                .group(UserRatingKey.GroupComparator.class)
+                .reduce(FavoriteCountReducer.class)
+                .write(output);
+    }
+
+    // Merge the partial counts and write the frequencies in ascending order.
+    public static Stage merge(Stage s, String input, Path output) {
+        return s.read(input)
+                .combine(CountCombiner.class)
+                .reduce(MergeCountReducer.class)
+                .reducers(1)
+                .writeText(output);
+    }
+
+    // Merge the partial counts and write the K most frequent titles of each reducer,
+    // for TopK.run.
+    public static Stage topMerge(Stage s, String input, String output) {
+        return s.read(input)
+                .combine(CountCombiner.class)
+                .reduce(TopTitleReducer.class)
+                .write(output);
+    }
+}
+
+// Favorite Reduce: chose one random best rated movie per user (like SecondReducer)
+// and count how many users of this reducer chose each movie.
+// Input:  userId1|userRate movieTitle
+//         userId1|userRate movieTitle
+//         ...
+//         userIdN|userRate movieTitle
+// Output: movieTitle1 partialCount
+//         movieTitle2 partialCount
+//         ...
+class FavoriteCountReducer extends Reducer<UserRatingKey, Text, Text, VIntWritable> {
+
+    // the favorites of each title: counts[t] for the title t of titles
+    final TitleDictionary titles = new TitleDictionary();
+    int[] counts = new int[1024];
+    private final Text title = new Text();
+    private final VIntWritable num = new VIntWritable();
+
+    @Override
+    public void reduce(UserRatingKey key, Iterable<Text> values, Context context) throws IOException, InterruptedException {
+        int t = titles.intern(values.iterator().next());
+        if (t == counts.length) {
+            counts = Arrays.copyOf(counts, t * 2);
+        }
+        counts[t]++;
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        for (int t = 0; t < titles.size(); t++) {
+            titles.get(t, title);
+            num.set(counts[t]);
+            context.write(title, num);
+        }
+    }
+}
+
+// Merge Reduce: sum the partial counts of each movie and show the frequency in
+// ascending order. It only holds one entry per movie.
+// Input:  movieTitle1 partialCount
+//         movieTitle1 partialCount
+//         movieTitle2 partialCount
+//         ...
+// Output: N1 movieTitle1
+//         N2 movieTitle2
+//         ...
+//         N movieTitleN
+class MergeCountReducer extends Reducer<Text, VIntWritable, IntWritable, Text> {
+
+    HashMap<Integer, StringBuilder> inv = new HashMap<>();
+    private final IntWritable num = new IntWritable();
+    private final Text content = new Text();
+
+    @Override
+    public void reduce(Text key, Iterable<VIntWritable> values, Context context) throws IOException, InterruptedException {
+        int sum = 0;
+        for (VIntWritable v : values) {
+            sum += v.get();
+        }
+        StringBuilder list = inv.get(sum);
+        if (list == null) {
+            inv.put(sum, new StringBuilder(key.toString()));
+        } else {
+            list.append(' ').append(key.toString());
+        }
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        Integer[] keys = inv.keySet().toArray(new Integer[0]);
+        Arrays.sort(keys);
+        for (int i : keys) {
+            num.set(i);
+            content.set(inv.get(i).toString());
+            context.write(num, content);
+        }
+    }
+}
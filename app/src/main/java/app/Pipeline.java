@@ -0,0 +1,345 @@
+package app;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MapFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+
+// A chain of Map/Reduce jobs described as stages reading and writing named datasets.
+// The sources are the movies and ratings files of the input directory; every other
+// dataset is written by a stage. Before any job is launched the pipeline checks that
+// each stage only reads datasets written by an earlier stage (or sources) whose
+// records its mapper accepts, and that the map output matches the reducer input.
+// So a stage cannot silently rescan the raw CSV files it does not use.
+public class Pipeline {
+
+    public static final String MOVIES = "movies";
+    public static final String RATINGS = "ratings";
+    // the ratings read in column batches by Batches
+    public static final String RATING_BATCHES = "ratings.batches";
+
+    // A set of files with records of the same key/value classes, read with format
+    // (null when the files can only be cached, like movies.dict).
+    @SuppressWarnings("rawtypes")
+    static class Dataset {
+        final String name;
+        final List<Path> paths = new ArrayList<>();
+        final Class<?> key;
+        final Class<?> value;
+        final Class<? extends InputFormat> format;
+
+        Dataset(String name, Class<?> key, Class<?> value, Class<? extends InputFormat> format) {
+            this.name = name;
+            this.key = key;
+            this.value = value;
+            this.format = format;
+        }
+    }
+
+    private final Configuration conf;
+    private final Class<?> jarClass;
+    private final Map<String, Dataset> datasets = new LinkedHashMap<>();
+    private final List<Stage> stages = new ArrayList<>();
+
+    public Pipeline(Configuration conf, Class<?> jarClass) {
+        this.conf = conf;
+        this.jarClass = jarClass;
+    }
+
+    // Register the movies and ratings files of the input directory as the "movies",
+    // "ratings" and "ratings.batches" source datasets. The input is either the
+    // MovieLens CSV files or the binary layout written by Ingest (movies.dict and *.bin
+    // ratings, possibly under year=YYYY/month=MM partitions).
+    public Pipeline sources(Path input) throws IOException {
+        List<Path> movieFiles = new ArrayList<>();
+        List<Path> ratingFiles = new ArrayList<>();
+        FileSystem fs = input.getFileSystem(conf);
+        for (FileStatus st : fs.listStatus(input)) {
+            Path p = fs.makeQualified(st.getPath());
+            String name = p.getName();
+            if (name.startsWith("_") || name.startsWith(".")) {
+                continue;
+            }
+            if (st.isDirectory() && name.startsWith("year=")) {
+                addPartition(fs, p, Integer.parseInt(name.substring(5)), ratingFiles);
+                continue;
+            }
+            (name.contains("movies") ? movieFiles : ratingFiles).add(p);
+        }
+        Dataset movies = new Dataset(MOVIES, LongWritable.class, Text.class, TextInputFormat.class);
+        if (!movieFiles.isEmpty() && movieFiles.get(0).getName().endsWith(MovieDictionary.EXTENSION)) {
+            movies = new Dataset(MOVIES, LongWritable.class, Text.class, null);
+        }
+        Dataset ratings = new Dataset(RATINGS, LongWritable.class, Text.class, TextInputFormat.class);
+        if (!ratingFiles.isEmpty() && BinaryRatings.isBinary(ratingFiles.get(0))) {
+            ratings = new Dataset(RATINGS, LongWritable.class, RatingRecord.class, BinaryRatings.class);
+        }
+        for (Path p : movieFiles) {
+            if (p.getName().endsWith(MovieDictionary.EXTENSION) != (movies.format == null)) {
+                throw new IOException(input + " mixes movies.csv and movies.dict files");
+            }
+            movies.paths.add(p);
+        }
+        for (Path p : ratingFiles) {
+            if (BinaryRatings.isBinary(p) != (ratings.format == BinaryRatings.class)) {
+                throw new IOException(input + " mixes text and binary ratings files");
+            }
+            ratings.paths.add(p);
+        }
+        Dataset batches = new Dataset(RATING_BATCHES, LongWritable.class, RatingBatch.class, Batches.class);
+        batches.paths.addAll(ratings.paths);
+        datasets.put(MOVIES, movies);
+        datasets.put(RATINGS, ratings);
+        datasets.put(RATING_BATCHES, batches);
+        return this;
+    }
+
+    // Add the ratings files of the year=YYYY/month=MM partitions written by Ingest,
+    // except the months outside the time window: they are not even listed.
+    private void addPartition(FileSystem fs, Path yearDir, int year, List<Path> ratingFiles) throws IOException {
+        TimeWindow window = TimeWindow.get(conf);
+        if (!window.overlaps(TimeWindow.monthStart(year, 1), TimeWindow.monthEnd(year, 12))) {
+            return;
+        }
+        for (FileStatus month : fs.listStatus(yearDir)) {
+            String name = month.getPath().getName();
+            if (!month.isDirectory() || !name.startsWith("month=")) {
+                continue;
+            }
+            int m = Integer.parseInt(name.substring(6));
+            if (!window.overlaps(TimeWindow.monthStart(year, m), TimeWindow.monthEnd(year, m))) {
+                continue;
+            }
+            for (FileStatus st : fs.listStatus(month.getPath())) {
+                String file = st.getPath().getName();
+                if (st.isFile() && !file.startsWith("_") && !file.startsWith(".")) {
+                    ratingFiles.add(fs.makeQualified(st.getPath()));
+                }
+            }
+        }
+    }
+
+    // Register existing SequenceFiles (or MapFiles) written by an earlier run, e.g. the
+    // state of Incremental, as a dataset the stages can read.
+    public Pipeline dataset(String name, Class<?> key, Class<?> value, List<Path> paths) {
+        Dataset d = new Dataset(name, key, value, SequenceFileInputFormat.class);
+        d.paths.addAll(paths);
+        datasets.put(name, d);
+        return this;
+    }
+
+    // The files of a source dataset.
+    List<Path> paths(String dataset) {
+        return datasets.get(dataset).paths;
+    }
+
+    public Stage stage(String name) {
+        Stage s = new Stage(name);
+        stages.add(s);
+        return s;
+    }
+
+    // Check the whole pipeline, then run the stages in order.
+    // Return 0 if every job succeeded, 1 otherwise.
+    public int run() throws IOException, InterruptedException, ClassNotFoundException {
+        Map<String, Dataset> all = resolve();
+        PipelineReport report = null;
+        if (PipelineReport.isEnabled(conf)) {
+            report = new PipelineReport(conf, jarClass.getSimpleName());
+        }
+        for (Stage s : stages) {
+            Job job = createJob(s, all);
+            boolean ok = report != null ? report.run(s, job) : job.waitForCompletion(true);
+            if (!ok) {
+                if (report != null) {
+                    report.write(false);
+                }
+                return 1;
+            }
+        }
+        if (report != null) {
+            report.write(true);
+        }
+        return 0;
+    }
+
+    // Throw an IllegalStateException describing the first inconsistency found.
+    public void validate() {
+        resolve();
+    }
+
+    // Check the stages and return the sources with the datasets the stages write,
+    // without changing the pipeline.
+    private Map<String, Dataset> resolve() {
+        Map<String, Dataset> known = new LinkedHashMap<>();
+        for (Dataset d : datasets.values()) {
+            known.put(d.name, d);
+        }
+        for (Stage s : stages) {
+            if (s.inputs.isEmpty()) {
+                fail(s, "reads no dataset");
+            }
+            Class<?> format = null;
+            Dataset first = null;
+            for (String in : s.inputs) {
+                Dataset d = known.get(in);
+                if (d == null) {
+                    fail(s, "reads " + in + ", which is not written by an earlier stage");
+                }
+                if (!accepts(s.mapInputKey(), d.key) || !accepts(s.mapInputValue(), d.value)) {
+                    fail(s, "reads " + in + " (" + d.key.getSimpleName() + ", " + d.value.getSimpleName()
+                            + ") but " + s.mapper.getSimpleName() + " does not consume these records");
+                }
+                if (d.format == null) {
+                    fail(s, "reads " + in + ", which can only be cached");
+                }
+                if (format != null && format != d.format) {
+                    fail(s, "reads datasets of different formats");
+                }
+                format = d.format;
+                first = d;
+            }
+            for (String c : s.cache) {
+                if (!known.containsKey(c)) {
+                    fail(s, "caches " + c + ", which is not written by an earlier stage");
+                }
+            }
+            Class<?> mapKey = mapOutputKey(s, first);
+            Class<?> mapValue = mapOutputValue(s, first);
+            if (mapKey == null || mapValue == null) {
+                fail(s, "has no known map output classes");
+            }
+            if (s.reducer != null) {
+                Class<?> k = Stage.typeArgument(s.reducer, Reducer.class, 0);
+                Class<?> v = Stage.typeArgument(s.reducer, Reducer.class, 1);
+                if (!accepts(k, mapKey) || !accepts(v, mapValue)) {
+                    fail(s, s.reducer.getSimpleName() + " does not consume the map output ("
+                            + mapKey.getSimpleName() + ", " + mapValue.getSimpleName() + ")");
+                }
+            }
+            if (s.indexed && (s.output == null || s.lazyOutput)) {
+                fail(s, "can only index an intermediate dataset written by the task outputs");
+            }
+            if (s.totalOrder && (s.reducer == null || s.partitioner != null)) {
+                fail(s, "needs a reducer and no partitioner to sort its output globally");
+            }
+            if ((s.output == null) == (s.finalOutput == null)) {
+                fail(s, "must write exactly one dataset");
+            }
+            if (s.output != null) {
+                if (known.containsKey(s.output)) {
+                    fail(s, "writes " + s.output + ", which already exists");
+                }
+                Class<?> k = s.reducer != null ? s.outputKey() : mapKey;
+                Class<?> v = s.reducer != null ? s.outputValue() : mapValue;
+                Dataset d = new Dataset(s.output, k, v, SequenceFileInputFormat.class);
+                d.paths.add(new Path(s.output));
+                known.put(s.output, d);
+            }
+        }
+        return known;
+    }
+
+    private static boolean accepts(Class<?> consumer, Class<?> record) {
+        return consumer == null || record == null || consumer.isAssignableFrom(record);
+    }
+
+    private static void fail(Stage s, String msg) {
+        throw new IllegalStateException("Stage \"" + s.name + "\" " + msg);
+    }
+
+    // The identity mapper writes the records it reads.
+    private static Class<?> mapOutputKey(Stage s, Dataset in) {
+        Class<?> c = s.mapOutputKey();
+        return c != null ? c : in.key;
+    }
+
+    private static Class<?> mapOutputValue(Stage s, Dataset in) {
+        Class<?> c = s.mapOutputValue();
+        return c != null ? c : in.value;
+    }
+
+    Job createJob(Stage s, Map<String, Dataset> all) throws IOException, InterruptedException {
+        Job job = Job.getInstance(conf, s.name);
+        job.setJarByClass(jarClass);
+        Dataset first = null;
+        for (String in : s.inputs) {
+            Dataset d = all.get(in);
+            for (Path p : d.paths) {
+                FileInputFormat.addInputPath(job, p);
+            }
+            first = d;
+        }
+        job.setInputFormatClass(first.format);
+        for (String c : s.cache) {
+            for (Path p : all.get(c).paths) {
+                job.addCacheFile(p.toUri());
+            }
+        }
+        job.setMapperClass(s.mapper);
+        job.setMapOutputKeyClass(mapOutputKey(s, first));
+        job.setMapOutputValueClass(mapOutputValue(s, first));
+        if (s.combiner != null) {
+            job.setCombinerClass(s.combiner);
+        }
+        if (s.partitioner != null) {
+            job.setPartitionerClass(s.partitioner);
+        }
+        if (s.grouping != null) {
+            job.setGroupingComparatorClass(s.grouping);
+        }
+        if (s.reducer != null) {
+            job.setReducerClass(s.reducer);
+            job.setOutputKeyClass(s.outputKey());
+            job.setOutputValueClass(s.outputValue());
+        } else {
+            job.setNumReduceTasks(0);
+            job.setOutputKeyClass(mapOutputKey(s, first));
+            job.setOutputValueClass(mapOutputValue(s, first));
+        }
+        if (s.reducers >= 0) {
+            job.setNumReduceTasks(s.reducers);
+        }
+        if (s.totalOrder) {
+            // the split points are written next to the sampled dataset
+            TotalOrder.configure(job, new Path(s.inputs.get(0) + "_partitions"));
+        }
+        if (Metrics.isTimed(conf)) {
+            Metrics.time(job);
+        }
+        Path out = s.finalOutput;
+        if (s.output != null) {
+            out = new Path(s.output);
+            Intermediate.setOutput(job);
+            if (s.indexed) {
+                job.setOutputFormatClass(MapFileOutputFormat.class);
+            }
+        }
+        if (s.lazyOutput) {
+            LazyOutputFormat.setOutputFormatClass(job, s.output != null
+                    ? SequenceFileOutputFormat.class : TextOutputFormat.class);
+        }
+        FileOutputFormat.setOutputPath(job, out);
+        out.getFileSystem(conf).delete(out, true);
+        return job;
+    }
+}
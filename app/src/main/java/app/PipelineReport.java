@@ -0,0 +1,178 @@
+package app;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.CounterGroup;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.TaskCounter;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormatCounter;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormatCounter;
+
+// Machine-readable summary of one Pipeline run, enabled with
+//   -D app.report=<path>
+// For every job: its wall time split in the map phase and the reduce phase (shuffle,
+// merge and reduce, measured from the end of the last map), the bytes read, shuffled
+// and written, the record counts, the counters of the application (see Metrics) and
+// all the Hadoop counters. The phases are sampled every
+// app.report.poll milliseconds (default 100), so they are not more precise than that.
+// The report is written as JSON when the pipeline ends, even if a job failed.
+public class PipelineReport {
+
+    public static final String REPORT = "app.report";
+    public static final String POLL = "app.report.poll";
+
+    private final Configuration conf;
+    private final String pipeline;
+    private final long start = System.currentTimeMillis();
+    private final List<Map<String, Object>> jobs = new ArrayList<>();
+
+    PipelineReport(Configuration conf, String pipeline) {
+        this.conf = conf;
+        this.pipeline = pipeline;
+    }
+
+    public static boolean isEnabled(Configuration conf) {
+        return conf.get(REPORT) != null;
+    }
+
+    // Submit the job and wait for it, sampling the progress of its phases.
+    // Return true if the job succeeded.
+    boolean run(Stage s, Job job) throws IOException, InterruptedException, ClassNotFoundException {
+        long poll = conf.getLong(POLL, 100);
+        long submitted = System.currentTimeMillis();
+        job.submit();
+        long mapEnd = 0;
+        while (!job.isComplete()) {
+            if (mapEnd == 0 && job.mapProgress() >= 1f) {
+                mapEnd = System.currentTimeMillis();
+            }
+            Thread.sleep(poll);
+        }
+        long end = System.currentTimeMillis();
+        if (mapEnd == 0 || job.getNumReduceTasks() == 0) {
+            mapEnd = end;
+        }
+        boolean ok = job.isSuccessful();
+
+        Map<String, Object> j = new LinkedHashMap<>();
+        j.put("name", s.name);
+        j.put("succeeded", ok);
+        j.put("startMs", submitted - start);
+        j.put("durationMs", end - submitted);
+        j.put("mapMs", mapEnd - submitted);
+        j.put("reduceMs", end - mapEnd);
+        j.put("reduces", job.getNumReduceTasks());
+        Counters counters = job.getCounters();
+        if (counters != null) {
+            j.put("inputRecords", counters.findCounter(TaskCounter.MAP_INPUT_RECORDS).getValue());
+            j.put("mapOutputRecords", counters.findCounter(TaskCounter.MAP_OUTPUT_RECORDS).getValue());
+            j.put("shuffleBytes", counters.findCounter(TaskCounter.REDUCE_SHUFFLE_BYTES).getValue());
+            j.put("reduceInputGroups", counters.findCounter(TaskCounter.REDUCE_INPUT_GROUPS).getValue());
+            j.put("outputRecords", counters.findCounter(job.getNumReduceTasks() == 0
+                    ? TaskCounter.MAP_OUTPUT_RECORDS : TaskCounter.REDUCE_OUTPUT_RECORDS).getValue());
+            j.put("inputBytes", counters.findCounter(FileInputFormatCounter.BYTES_READ).getValue());
+            j.put("mapOutputBytes", counters.findCounter(TaskCounter.MAP_OUTPUT_BYTES).getValue());
+            j.put("outputBytes", counters.findCounter(FileOutputFormatCounter.BYTES_WRITTEN).getValue());
+            long groups = counters.findCounter(TaskCounter.REDUCE_INPUT_GROUPS).getValue();
+            if (groups > 0) {
+                j.put("valuesPerGroup", (double) counters.findCounter(TaskCounter.REDUCE_INPUT_RECORDS).getValue() / groups);
+            }
+            // the counters of the application (Metrics) first, then every counter
+            Map<String, Object> metrics = new LinkedHashMap<>();
+            Map<String, Object> all = new LinkedHashMap<>();
+            for (CounterGroup g : counters) {
+                Map<String, Object> values = new LinkedHashMap<>();
+                for (Counter c : g) {
+                    values.put(c.getName(), c.getValue());
+                }
+                if (g.getName().startsWith(Metrics.class.getName())) {
+                    metrics.putAll(values);
+                }
+                all.put(g.getName(), values);
+            }
+            j.put("metrics", metrics);
+            j.put("counters", all);
+        }
+        jobs.add(j);
+        return ok;
+    }
+
+    // Add a step that did not run as a job (LocalEngine): its name, timings and
+    // metrics, with the same keys as the jobs where they apply.
+    void add(Map<String, Object> step) {
+        jobs.add(step);
+    }
+
+    void write(boolean succeeded) throws IOException {
+        Map<String, Object> r = new LinkedHashMap<>();
+        r.put("pipeline", pipeline);
+        r.put("succeeded", succeeded);
+        r.put("durationMs", System.currentTimeMillis() - start);
+        r.put("options", new LinkedHashMap<String, Object>(conf.getPropsWithPrefix("app.")));
+        r.put("jobs", jobs);
+        StringBuilder sb = new StringBuilder();
+        toJson(sb, r);
+        sb.append('\n');
+        Path p = new Path(conf.get(REPORT));
+        try (OutputStream out = p.getFileSystem(conf).create(p, true)) {
+            out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    // Append a value made of maps, lists, strings, numbers and booleans as JSON.
+    static void toJson(StringBuilder sb, Object v) {
+        if (v instanceof Map) {
+            sb.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) v).entrySet()) {
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                toJson(sb, String.valueOf(e.getKey()));
+                sb.append(':');
+                toJson(sb, e.getValue());
+            }
+            sb.append('}');
+        } else if (v instanceof List) {
+            sb.append('[');
+            boolean first = true;
+            for (Object o : (List<?>) v) {
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                toJson(sb, o);
+            }
+            sb.append(']');
+        } else if (v instanceof Number || v instanceof Boolean) {
+            sb.append(v);
+        } else if (v == null) {
+            sb.append("null");
+        } else {
+            String s = v.toString();
+            sb.append('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == '"' || c == '\\') {
+                    sb.append('\\').append(c);
+                } else if (c < 0x20) {
+                    sb.append(String.format("\\u%04x", (int) c));
+                } else {
+                    sb.append(c);
+                }
+            }
+            sb.append('"');
+        }
+    }
+}
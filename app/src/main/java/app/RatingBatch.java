@@ -0,0 +1,86 @@
+package app;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+// A block of consecutive ratings stored by column: users[i], movies[i], rates[i] and
+// timestamps[i] are the fields of the i-th rating, for i < size. The arrays are
+// allocated once per task and refilled by the reader for every batch (see Batches).
+public class RatingBatch implements Writable {
+
+    public final int[] users;
+    public final int[] movies;
+    public final byte[] rates;
+    public final int[] timestamps;
+    private int size;
+
+    public RatingBatch() {
+        this(4096);
+    }
+
+    public RatingBatch(int capacity) {
+        users = new int[capacity];
+        movies = new int[capacity];
+        rates = new byte[capacity];
+        timestamps = new int[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return users.length;
+    }
+
+    public boolean isFull() {
+        return size == users.length;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    // Keep the first size ratings.
+    public void truncate(int size) {
+        this.size = Math.min(this.size, size);
+    }
+
+    public void add(int userId, int movieId, byte rate, int timestamp) {
+        users[size] = userId;
+        movies[size] = movieId;
+        rates[size] = rate;
+        timestamps[size] = timestamp;
+        size++;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, size);
+        for (int i = 0; i < size; i++) {
+            out.writeInt(users[i]);
+            out.writeInt(movies[i]);
+            out.writeByte(rates[i]);
+            out.writeInt(timestamps[i]);
+        }
+    }
+
+    // The batch must be large enough for the records read.
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        size = WritableUtils.readVInt(in);
+        if (size > users.length) {
+            throw new IOException("batch of " + size + " ratings in a RatingBatch of " + users.length);
+        }
+        for (int i = 0; i < size; i++) {
+            users[i] = in.readInt();
+            movies[i] = in.readInt();
+            rates[i] = in.readByte();
+            timestamps[i] = in.readInt();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package app;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+
+// Read the ratings of a mapper from either a line of ratings.csv (Text) or a record of
+// the binary layout (RatingRecord), and count them in Metrics.Records.
+// The mappers that only read the ratings take a Writable value, so the same mapper
+// runs on the CSV files and on the output of Ingest.
+class RatingParser {
+
+    private final CsvParser csv = new CsvParser();
+    private final Counter parsed;
+    private final Counter skipped;
+    private final Counter malformed;
+    private final Counter outOfWindow;
+    private final TimeWindow window;
+    private int userId;
+    private int movieId;
+    private byte rate;
+
+    RatingParser(TaskInputOutputContext<?, ?, ?, ?> context) {
+        parsed = context.getCounter(Metrics.Records.PARSED);
+        skipped = context.getCounter(Metrics.Records.SKIPPED);
+        malformed = context.getCounter(Metrics.Records.MALFORMED);
+        outOfWindow = context.getCounter(Metrics.Records.OUT_OF_WINDOW);
+        window = TimeWindow.get(context.getConfiguration());
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public int getMovieId() {
+        return movieId;
+    }
+
+    public byte getRate() {
+        return rate;
+    }
+
+    // Return false for the header, the malformed ratings and the ratings outside the
+    // time window.
+    public boolean parse(Object key, Writable value) {
+        long timestamp;
+        if (value instanceof RatingRecord) {
+            RatingRecord r = (RatingRecord) value;
+            userId = r.getUserId();
+            movieId = r.getMovieId();
+            rate = r.getRate();
+            timestamp = r.getTimestamp() & 0xFFFFFFFFL;
+        } else {
+            // userId,movieId,rating,timestamp
+            if (!csv.parse((Text) value)) {
+                skipped.increment(1);
+                return false;
+            }
+            userId = csv.getInt(0);
+            movieId = csv.getInt(1);
+            rate = csv.getRating(2);
+            timestamp = window.isAll() ? 0 : csv.getLong(3);
+        }
+        if (userId < 0 || movieId < 0 || rate < 0) {
+            (Metrics.isHeader(key) ? skipped : malformed).increment(1);
+            return false;
+        }
+        parsed.increment(1);
+        if (!window.contains(timestamp)) {
+            outOfWindow.increment(1);
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,17 @@
+package app;
+
+// MovieLens ratings go from 0.5 to 5.0 in half-star steps, so they are stored as the
+// number of half stars in a single byte (4.5 -> 9).
+class Ratings {
+
+    private Ratings() {
+    }
+
+    public static float toFloat(byte halves) {
+        return halves / 2f;
+    }
+
+    public static String toString(byte halves) {
+        return Float.toString(toFloat(halves));
+    }
+}
@@ -0,0 +1,81 @@
+package app;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Mapper;
+
+// Replicated (map-side) join of movies.csv and ratings.csv.
+// movies.csv is small, so instead of shuffling every rating to the movie's reducer
+// (MovieMapper + FirstReducer/ReducerOne) we ship the movies file to every task through
+// the distributed cache and resolve the titles directly in the mapper.
+// Enable it with: -D app.join=replicated
+// The pipelines then read the "ratings" dataset and cache the "movies" one.
+public class ReplicatedJoin {
+
+    public static final String JOIN_MODE = "app.join";
+
+    public static boolean isEnabled(Configuration conf) {
+        return "replicated".equals(conf.get(JOIN_MODE, "reduce"));
+    }
+}
+
+// Base of the replicated join mappers: load the movie dictionary once per task and
+// resolve the title of each rating.
+abstract class ReplicatedJoinBase<K, V> extends Mapper<Object, Writable, K, V> {
+
+    protected MovieDictionary movies;
+    protected final Text title = new Text();
+    protected int userId;
+    protected byte rate;
+    private RatingParser ratings;
+    private Counter misses;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        movies = MovieDictionary.fromCache(context.getCacheFiles(), context.getConfiguration());
+        ratings = new RatingParser(context);
+        misses = context.getCounter(Metrics.Records.JOIN_MISSES);
+    }
+
+    // Read a rating (a line of ratings.csv or a RatingRecord), set userId and rate, and
+    // set title to the title of its movie. Return false for the header and malformed
+    // lines. A movie that is not in the dictionary gets an empty title and is counted
+    // as a join miss, like in the reduce-side join (FirstReducer, StreamJoinReducer).
+    protected boolean join(Object key, Writable value) {
+        if (!ratings.parse(key, value)) {
+            return false;
+        }
+        userId = ratings.getUserId();
+        rate = ratings.getRate();
+        if (!movies.get(ratings.getMovieId(), title)) {
+            title.clear();
+            misses.increment(1);
+        }
+        return true;
+    }
+}
+
+// Join Map: resolve the title of each rating with the in-memory movie dictionary.
+// It replaces Job 1 and the Second Map, so the output is the same as UserMapper.
+// Input:  ratings.csv (userId,movieId,rating,timestamp) or binary ratings
+// Output: userId1|userRate movieTitle
+//         userId1|userRate movieTitle
+//         ...
+//         userIdN|userRate movieTitle
+class ReplicatedJoinMapper extends ReplicatedJoinBase<UserRatingKey, Text> {
+
+    private final UserRatingKey id = new UserRatingKey();
+
+    @Override
+    public void map(Object key, Writable value, Context context) throws IOException, InterruptedException {
+        if (!join(key, value)) {
+            return;
+        }
+        id.set(userId, rate);
+        context.write(id, title);
+    }
+}
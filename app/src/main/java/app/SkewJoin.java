@@ -0,0 +1,257 @@
+package app;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.util.LineReader;
+
+// Skew-resistant reduce-side join of movies.csv and ratings.csv.
+// FirstReducer and ReducerOne build one MovieRatings record per movie, so a blockbuster
+// with hundreds of thousands of ratings is a single huge record held by one reducer
+// (and split again by UserMapper or AllReducer). Here:
+//  - the title sorts before the ratings of its movie (JoinKey), so the reducer streams
+//    one output record per rating and only holds the title;
+//  - the driver samples ratings.csv and salts the hot movies: their ratings are spread
+//    over several (movieId, salt) groups sent to different reducers, and their title is
+//    sent to every salt.
+// A movie is hot when its share of the sampled ratings is at least app.skew.hot.share
+// (default 1 / (4 * reducers)); it then gets up to one salt per reducer. The sample is
+// app.skew.sample lines (default 100000) read in 100 chunks spread over the files.
+// The hot movies can also be given as app.skew.hot.keys=movieId:salts,... (then no
+// sample is read).
+// Enable it with: -D app.join=skew
+public class SkewJoin {
+
+    public static final String HOT_KEYS = "app.skew.hot.keys";
+    public static final String SAMPLE = "app.skew.sample";
+    public static final String HOT_SHARE = "app.skew.hot.share";
+    static final int CHUNKS = 100;
+
+    private SkewJoin() {
+    }
+
+    public static boolean isEnabled(Configuration conf) {
+        return "skew".equals(conf.get(ReplicatedJoin.JOIN_MODE, "reduce"));
+    }
+
+    // Add the join stage, which reads the movies and the ratings and writes the output
+    // of the reducer, a subclass of StreamJoinReducer.
+    public static Stage join(Pipeline pipeline, Configuration conf, String name,
+            Class<? extends StreamJoinReducer<?, ?>> reducer, String output) throws IOException {
+        if (conf.get(HOT_KEYS) == null) {
+            conf.set(HOT_KEYS, findHotMovies(conf, pipeline.paths(Pipeline.RATINGS)));
+        } else {
+            // check the given keys in the driver rather than in every map task
+            parseHotKeys(conf.getTrimmedStrings(HOT_KEYS));
+        }
+        return pipeline.stage(name)
+                .read(Pipeline.MOVIES, Pipeline.RATINGS)
+                .map(SkewJoinMapper.class)
+                .partition(JoinKey.SaltPartitioner.class)
+                .group(JoinKey.GroupComparator.class)
+                .reduce(reducer)
+                .write(output);
+    }
+
+    // The hot movies "movieId:salts" as (movieId << 32) | salts, sorted by movieId.
+    static long[] parseHotKeys(String[] hot) {
+        long[] pairs = new long[hot.length];
+        for (int i = 0; i < hot.length; i++) {
+            int colon = hot[i].indexOf(':');
+            int movieId = -1;
+            int salts = 0;
+            if (colon > 0) {
+                try {
+                    movieId = Integer.parseInt(hot[i].substring(0, colon).trim());
+                    salts = Integer.parseInt(hot[i].substring(colon + 1).trim());
+                } catch (NumberFormatException e) {
+                    movieId = -1;
+                }
+            }
+            if (movieId < 0 || salts < 1) {
+                throw new IllegalArgumentException("Invalid entry \"" + hot[i] + "\" in " + HOT_KEYS
+                        + ", use movieId:salts with salts >= 1");
+            }
+            pairs[i] = (long) movieId << 32 | salts;
+        }
+        Arrays.sort(pairs);
+        return pairs;
+    }
+
+    // Sample the ratings files and return the hot movies as "movieId:salts,...".
+    static String findHotMovies(Configuration conf, List<Path> files) throws IOException {
+        int reducers = conf.getInt(MRJobConfig.NUM_REDUCES, 1);
+        if (reducers < 2 || files.isEmpty()) {
+            return "";
+        }
+        int lines = Math.max(1, conf.getInt(SAMPLE, 100000) / CHUNKS);
+        double hot = conf.getDouble(HOT_SHARE, 1.0 / (4 * reducers));
+
+        long total = 0;
+        List<Long> sizes = new ArrayList<>();
+        for (Path p : files) {
+            long len = p.getFileSystem(conf).getFileStatus(p).getLen();
+            sizes.add(len);
+            total += len;
+        }
+        Map<Integer, int[]> counts = new HashMap<>();
+        int sampled = 0;
+        CsvParser csv = new CsvParser();
+        Text line = new Text();
+        for (int f = 0; f < files.size(); f++) {
+            Path p = files.get(f);
+            long len = sizes.get(f);
+            int chunks = (int) Math.max(1, CHUNKS * len / Math.max(1, total));
+            FileSystem fs = p.getFileSystem(conf);
+            try (FSDataInputStream in = fs.open(p)) {
+                for (int c = 0; c < chunks; c++) {
+                    long off = len * c / chunks;
+                    in.seek(off);
+                    LineReader reader = new LineReader(in, conf);
+                    if (off > 0) {
+                        // skip the end of the line cut by the seek
+                        reader.readLine(line);
+                    }
+                    for (int i = 0; i < lines && reader.readLine(line) > 0; i++) {
+                        if (!csv.parse(line) || csv.getInt(0) < 0) {
+                            continue;
+                        }
+                        int movieId = csv.getInt(1);
+                        if (movieId >= 0) {
+                            counts.computeIfAbsent(movieId, k -> new int[1])[0]++;
+                            sampled++;
+                        }
+                    }
+                }
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Integer, int[]> e : counts.entrySet()) {
+            double share = (double) e.getValue()[0] / sampled;
+            int salts = (int) Math.min(reducers, Math.ceil(share / hot));
+            if (share >= hot && salts > 1) {
+                if (sb.length() > 0) {
+                    sb.append(',');
+                }
+                sb.append(e.getKey()).append(':').append(salts);
+            }
+        }
+        return sb.toString();
+    }
+}
+
+// Join Map: key each movie and rating by (movieId, salt, tag). A rating of a hot movie
+// gets a salt from its userId, the title of a hot movie is sent to every salt.
+// Input:  movie.csv and rating.csv files
+// Output: (movieId, 0, TITLE)     JoinValue(TITLE, movieTitle)
+//         (movieId, 0, RATING)    JoinValue(RATING, userId, userRate)
+//         (hotMovieId, 0, TITLE)  JoinValue(TITLE, movieTitle)
+//         (hotMovieId, 1, TITLE)  JoinValue(TITLE, movieTitle)
+//         (hotMovieId, 0, RATING) JoinValue(RATING, userId, userRate)
+//         (hotMovieId, 1, RATING) JoinValue(RATING, userId, userRate)
+//         ...
+class SkewJoinMapper extends JoinMapperBase<JoinKey> {
+
+    private final JoinKey key = new JoinKey();
+    private int[] hotIds;
+    private int[] hotSalts;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        super.setup(context);
+        long[] pairs = SkewJoin.parseHotKeys(context.getConfiguration().getTrimmedStrings(SkewJoin.HOT_KEYS));
+        hotIds = new int[pairs.length];
+        hotSalts = new int[pairs.length];
+        for (int i = 0; i < pairs.length; i++) {
+            hotIds[i] = (int) (pairs[i] >>> 32);
+            hotSalts[i] = (int) pairs[i];
+        }
+    }
+
+    @Override
+    protected void write(int movieId, JoinValue value, Context context) throws IOException, InterruptedException {
+        int i = Arrays.binarySearch(hotIds, movieId);
+        int salts = i < 0 ? 1 : hotSalts[i];
+        if (value.isTitle()) {
+            for (int s = 0; s < salts; s++) {
+                key.set(movieId, s, JoinValue.TITLE);
+                context.write(key, value);
+            }
+        } else {
+            key.set(movieId, (value.getUserId() & Integer.MAX_VALUE) % salts, JoinValue.RATING);
+            context.write(key, value);
+        }
+    }
+}
+
+// Base of the streaming join reducers: the title comes first in each group, then
+// every rating is written as soon as it is read, so the memory does not depend on the
+// number of ratings of the movie. The ratings without a title are written with an
+// empty one, like FirstReducer does.
+abstract class StreamJoinReducer<K, V> extends Reducer<JoinKey, JoinValue, K, V> {
+
+    private final Text title = new Text();
+    private GroupCounter groups;
+    private Counter misses;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        groups = new GroupCounter(context);
+        misses = context.getCounter(Metrics.Records.JOIN_MISSES);
+    }
+
+    @Override
+    public void reduce(JoinKey key, Iterable<JoinValue> values, Context context) throws IOException, InterruptedException {
+        title.clear();
+        boolean titled = false;
+        int n = 0;
+        for (JoinValue v : values) {
+            n++;
+            if (v.isTitle()) {
+                if (!titled) {
+                    title.set(v.getTitle());
+                    titled = true;
+                }
+                continue;
+            }
+            if (!titled) {
+                misses.increment(1);
+            }
+            write(title, v.getUserId(), v.getRate(), context);
+        }
+        groups.add(n);
+    }
+
+    protected abstract void write(Text title, int userId, byte rate, Context context) throws IOException, InterruptedException;
+}
+
+// Join Reduce: write the ratings keyed by (userId, userRate), which is the output of
+// UserMapper, so the next job only needs the identity mapper.
+// Input:  movieId#salt t:movieTitle
+//         movieId#salt r:userId|userRate
+//         ...
+// Output: userId1|userRate movieTitle
+//         userId2|userRate movieTitle
+//         ...
+class StreamUserReducer extends StreamJoinReducer<UserRatingKey, Text> {
+
+    private final UserRatingKey id = new UserRatingKey();
+
+    @Override
+    protected void write(Text title, int userId, byte rate, Context context) throws IOException, InterruptedException {
+        id.set(userId, rate);
+        context.write(id, title);
+    }
+}
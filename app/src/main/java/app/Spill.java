@@ -0,0 +1,412 @@
+package app;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.LocalDirAllocator;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.MRConfig;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+
+// Memory budget of the single reducers that aggregate the whole input in memory:
+// AllReducer (ChainTer, the favorite of every user) and AscendReduce (ChainSec, the
+// frequency of every title). Without a budget they keep everything in their tables.
+// With -D app.spill.memory=<bytes> (e.g. 256m) a reducer fills its table up to half the
+// budget, then moves it to a SpillSorter and starts again; the sorter uses the other
+// half to sort its records and writes them as sorted runs to the local directories
+// of the task. At the end the runs are merged (k-way, at most mapreduce.task.io.sort.factor
+// runs at a time). AscendReduce then writes the same frequencies as in memory.
+// AllReducer writes the same frequencies up to the choice among the tied favorites
+// of a user: the spilled records keep the lowest title index of the best rate, the
+// in-memory table the first one seen. A reducer whose data fits in its half never
+// writes a run.
+// Enable it with: -D app.spill.memory=256m
+public class Spill {
+
+    public static final String MEMORY = "app.spill.memory";
+
+    private Spill() {
+    }
+
+    public static boolean isEnabled(Configuration conf) {
+        return getMemory(conf) > 0;
+    }
+
+    public static long getMemory(Configuration conf) {
+        return conf.getLongBytes(MEMORY, 0);
+    }
+}
+
+// Records (key, value, count) sorted by key then by the bytes of the value, within a
+// memory budget: the records that do not fit are sorted and spilled to a run on the
+// local disk, and merge() reads them back in order from all the runs. The equal
+// records are combined by adding their counts, when a run is written and when the
+// runs are merged.
+class SpillSorter implements Closeable {
+
+    // estimated bytes of a buffered record besides its value: key, count, offset, order
+    static final int RECORD_BYTES = 28;
+
+    private final Configuration conf;
+    private final String name;
+    private final long memory;
+    private final int factor;
+    private final LocalDirAllocator dirs = new LocalDirAllocator(MRConfig.LOCAL_DIR);
+    private final List<File> runs = new ArrayList<>();
+    private final Counter spilledRuns;
+    private final Counter spilledRecords;
+    private final Counter spilledBytes;
+
+    private long[] keys = new long[1024];
+    private long[] counts = new long[1024];
+    private int[] offsets = new int[1025];
+    private byte[] data = new byte[1 << 16];
+    private int size;
+
+    // The runs are files of the local directories of the task named after name, and
+    // are counted in Metrics.Spills.
+    SpillSorter(TaskInputOutputContext<?, ?, ?, ?> context, String name, long memory) {
+        this.conf = context.getConfiguration();
+        this.name = name;
+        this.memory = memory;
+        this.factor = Math.max(2, conf.getInt(MRJobConfig.IO_SORT_FACTOR, MRJobConfig.DEFAULT_IO_SORT_FACTOR));
+        spilledRuns = context.getCounter(Metrics.Spills.RUNS);
+        spilledRecords = context.getCounter(Metrics.Spills.RECORDS);
+        spilledBytes = context.getCounter(Metrics.Spills.BYTES);
+    }
+
+    public int getRuns() {
+        return runs.size();
+    }
+
+    public boolean isEmpty() {
+        return size == 0 && runs.isEmpty();
+    }
+
+    public void add(long key, long count) throws IOException {
+        add(key, data, 0, 0, count);
+    }
+
+    public void add(long key, byte[] b, int off, int len, long count) throws IOException {
+        if (size > 0 && (long) offsets[size] + len + (long) (size + 1) * RECORD_BYTES > memory) {
+            spill();
+        }
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            counts = Arrays.copyOf(counts, size * 2);
+            offsets = Arrays.copyOf(offsets, size * 2 + 1);
+        }
+        int start = offsets[size];
+        if (start + len > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, start + len));
+        }
+        System.arraycopy(b, off, data, start, len);
+        keys[size] = key;
+        counts[size] = count;
+        offsets[size + 1] = start + len;
+        size++;
+    }
+
+    // Sort the buffered records and write them to a new run.
+    private void spill() throws IOException {
+        int[] order = sort();
+        File file = dirs.createTmpFileForWrite(name, offsets[size] + (long) size * 16, conf);
+        runs.add(file);
+        try (RunWriter out = new RunWriter(file)) {
+            for (int i = 0; i < order.length;) {
+                int r = order[i];
+                long count = 0;
+                for (; i < order.length && compare(r, order[i]) == 0; i++) {
+                    count += counts[order[i]];
+                }
+                out.write(keys[r], data, offsets[r], offsets[r + 1] - offsets[r], count);
+            }
+        }
+        size = 0;
+    }
+
+    // The records in order, the equal ones combined. The sorter is empty afterwards.
+    public Cursor merge() throws IOException {
+        if (runs.isEmpty()) {
+            return new BufferCursor(sort());
+        }
+        if (size > 0) {
+            spill();
+        }
+        // merge the oldest runs first until a single pass is left
+        while (runs.size() > factor) {
+            List<File> batch = new ArrayList<>(runs.subList(0, factor));
+            runs.subList(0, factor).clear();
+            long bytes = 0;
+            for (File f : batch) {
+                bytes += f.length();
+            }
+            File file = dirs.createTmpFileForWrite(name, bytes, conf);
+            runs.add(file);
+            try (MergeCursor in = new MergeCursor(batch); RunWriter out = new RunWriter(file)) {
+                while (in.next()) {
+                    out.write(in.getKey(), in.getData(), 0, in.getLength(), in.getCount());
+                }
+            }
+        }
+        List<File> last = new ArrayList<>(runs);
+        runs.clear();
+        return new MergeCursor(last);
+    }
+
+    @Override
+    public void close() {
+        for (File f : runs) {
+            f.delete();
+        }
+        runs.clear();
+        size = 0;
+    }
+
+    private int compare(int a, int b) {
+        int c = Long.compare(keys[a], keys[b]);
+        if (c != 0) {
+            return c;
+        }
+        return WritableComparator.compareBytes(data, offsets[a], offsets[a + 1] - offsets[a],
+                data, offsets[b], offsets[b + 1] - offsets[b]);
+    }
+
+    // The indexes of the buffered records in order (a merge sort, stable).
+    private int[] sort() {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        int[] tmp = new int[size];
+        for (int width = 1; width < size; width *= 2) {
+            for (int lo = 0; lo < size; lo += 2 * width) {
+                int mid = Math.min(lo + width, size);
+                int hi = Math.min(lo + 2 * width, size);
+                int i = lo;
+                int j = mid;
+                int k = lo;
+                while (i < mid && j < hi) {
+                    tmp[k++] = compare(order[j], order[i]) < 0 ? order[j++] : order[i++];
+                }
+                while (i < mid) {
+                    tmp[k++] = order[i++];
+                }
+                while (j < hi) {
+                    tmp[k++] = order[j++];
+                }
+            }
+            int[] t = order;
+            order = tmp;
+            tmp = t;
+        }
+        return order;
+    }
+
+    // A run: vlong key, vlong count, vint length and the bytes of the value, per record.
+    private class RunWriter implements Closeable {
+        private final File file;
+        private final DataOutputStream out;
+        private long records;
+
+        RunWriter(File file) throws IOException {
+            this.file = file;
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        }
+
+        void write(long key, byte[] b, int off, int len, long count) throws IOException {
+            WritableUtils.writeVLong(out, key);
+            WritableUtils.writeVLong(out, count);
+            WritableUtils.writeVInt(out, len);
+            out.write(b, off, len);
+            records++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+            spilledRuns.increment(1);
+            spilledRecords.increment(records);
+            spilledBytes.increment(file.length());
+        }
+    }
+
+    // Records read one at a time, in order.
+    abstract static class Cursor implements Closeable {
+        protected long key;
+        protected long count;
+        protected byte[] value = new byte[64];
+        protected int length;
+
+        // Move to the next record, return false at the end.
+        public abstract boolean next() throws IOException;
+
+        public long getKey() {
+            return key;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        // The bytes of the value, valid until the next call of next().
+        public byte[] getData() {
+            return value;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        protected void setValue(byte[] b, int off, int len) {
+            if (len > value.length) {
+                value = new byte[Math.max(len, value.length * 2)];
+            }
+            System.arraycopy(b, off, value, 0, len);
+            length = len;
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+
+    // The buffered records, when nothing was spilled.
+    private class BufferCursor extends Cursor {
+        private final int[] order;
+        private int i;
+
+        BufferCursor(int[] order) {
+            this.order = order;
+        }
+
+        @Override
+        public boolean next() {
+            if (i == order.length) {
+                size = 0;
+                return false;
+            }
+            int r = order[i];
+            key = keys[r];
+            count = 0;
+            for (; i < order.length && compare(r, order[i]) == 0; i++) {
+                count += counts[order[i]];
+            }
+            setValue(data, offsets[r], offsets[r + 1] - offsets[r]);
+            return true;
+        }
+    }
+
+    // The records of one run file, deleted when it is closed.
+    private static class RunCursor extends Cursor {
+        private final File file;
+        private final DataInputStream in;
+        final int run;
+
+        RunCursor(File file, int run) throws IOException {
+            this.file = file;
+            this.run = run;
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            try {
+                key = WritableUtils.readVLong(in);
+            } catch (EOFException e) {
+                return false;
+            }
+            count = WritableUtils.readVLong(in);
+            length = WritableUtils.readVInt(in);
+            if (length > value.length) {
+                value = new byte[Math.max(length, value.length * 2)];
+            }
+            in.readFully(value, 0, length);
+            return true;
+        }
+
+        int compareTo(RunCursor o) {
+            int c = Long.compare(key, o.key);
+            if (c == 0) {
+                c = WritableComparator.compareBytes(value, 0, length, o.value, 0, o.length);
+            }
+            return c != 0 ? c : Integer.compare(run, o.run);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+            file.delete();
+        }
+    }
+
+    // k-way merge of run files with a heap of their current records.
+    private static class MergeCursor extends Cursor {
+        private final List<RunCursor> all = new ArrayList<>();
+        private final PriorityQueue<RunCursor> heap = new PriorityQueue<>((a, b) -> a.compareTo(b));
+
+        MergeCursor(List<File> files) throws IOException {
+            try {
+                for (File f : files) {
+                    RunCursor run = new RunCursor(f, all.size());
+                    all.add(run);
+                    if (run.next()) {
+                        heap.add(run);
+                    }
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            RunCursor top = heap.poll();
+            if (top == null) {
+                return false;
+            }
+            key = top.key;
+            count = top.count;
+            setValue(top.value, 0, top.length);
+            advance(top);
+            // combine the same record of the other runs
+            while (!heap.isEmpty() && heap.peek().key == key && WritableComparator.compareBytes(heap.peek().value,
+                    0, heap.peek().length, value, 0, length) == 0) {
+                RunCursor run = heap.poll();
+                count += run.count;
+                advance(run);
+            }
+            return true;
+        }
+
+        private void advance(RunCursor run) throws IOException {
+            if (run.next()) {
+                heap.add(run);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (RunCursor run : all) {
+                run.close();
+            }
+        }
+    }
+}
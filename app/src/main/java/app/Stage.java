@@ -0,0 +1,200 @@
+package app;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Partitioner;
+import org.apache.hadoop.mapreduce.Reducer;
+
+// Description of one Map/Reduce job of a Pipeline: the datasets it reads, the classes
+// it runs and the dataset it writes. The key/value classes are taken from the generic
+// parameters of the mapper and the reducer unless they are set explicitly.
+// The classes are raw: the class literal of a generic class (CountCombiner,
+// UserPartitioner, a WritableComparator) is a raw type.
+@SuppressWarnings("rawtypes")
+public class Stage {
+
+    final String name;
+    final List<String> inputs = new ArrayList<>();
+    final List<String> cache = new ArrayList<>();
+    Class<? extends Mapper> mapper = Mapper.class;
+    Class<? extends Reducer> combiner;
+    Class<? extends Reducer> reducer;
+    Class<? extends Partitioner> partitioner;
+    Class<? extends RawComparator> grouping;
+    Class<?> mapOutputKey;
+    Class<?> mapOutputValue;
+    Class<?> outputKey;
+    Class<?> outputValue;
+    int reducers = -1;
+    boolean totalOrder;
+    boolean lazyOutput;
+    boolean indexed;
+    String output;
+    Path finalOutput;
+
+    Stage(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Datasets read by the mapper.
+    public Stage read(String... datasets) {
+        inputs.addAll(Arrays.asList(datasets));
+        return this;
+    }
+
+    // Datasets shipped to every task through the distributed cache.
+    public Stage cache(String... datasets) {
+        cache.addAll(Arrays.asList(datasets));
+        return this;
+    }
+
+    public Stage map(Class<? extends Mapper> mapper) {
+        this.mapper = mapper;
+        return this;
+    }
+
+    public Stage combine(Class<? extends Reducer> combiner) {
+        this.combiner = combiner;
+        return this;
+    }
+
+    public Stage reduce(Class<? extends Reducer> reducer) {
+        this.reducer = reducer;
+        return this;
+    }
+
+    public Stage partition(Class<? extends Partitioner> partitioner) {
+        this.partitioner = partitioner;
+        return this;
+    }
+
+    public Stage group(Class<? extends RawComparator> grouping) {
+        this.grouping = grouping;
+        return this;
+    }
+
+    public Stage reducers(int n) {
+        this.reducers = n;
+        return this;
+    }
+
+    // Sort the output globally over all the reducers (see TotalOrder).
+    public Stage totalOrder() {
+        this.totalOrder = true;
+        return this;
+    }
+
+    // Only create the part files that are written to, e.g. when the reducer writes
+    // through MultipleOutputs and not to its own output.
+    public Stage lazyOutput() {
+        this.lazyOutput = true;
+        return this;
+    }
+
+    // Write the intermediate dataset as MapFiles, so that the records can be looked up
+    // by key (MapFileOutputFormat.getEntry) as well as read as SequenceFiles.
+    public Stage indexed() {
+        this.indexed = true;
+        return this;
+    }
+
+    public Stage mapOutput(Class<?> key, Class<?> value) {
+        this.mapOutputKey = key;
+        this.mapOutputValue = value;
+        return this;
+    }
+
+    public Stage output(Class<?> key, Class<?> value) {
+        this.outputKey = key;
+        this.outputValue = value;
+        return this;
+    }
+
+    // Write an intermediate dataset (a SequenceFile directory with the same name).
+    public Stage write(String dataset) {
+        this.output = dataset;
+        return this;
+    }
+
+    // Write the final result of the pipeline as text.
+    public Stage writeText(Path p) {
+        this.finalOutput = p;
+        return this;
+    }
+
+    Class<?> mapInputKey() {
+        return typeArgument(mapper, Mapper.class, 0);
+    }
+
+    Class<?> mapInputValue() {
+        return typeArgument(mapper, Mapper.class, 1);
+    }
+
+    Class<?> mapOutputKey() {
+        return mapOutputKey != null ? mapOutputKey : typeArgument(mapper, Mapper.class, 2);
+    }
+
+    Class<?> mapOutputValue() {
+        return mapOutputValue != null ? mapOutputValue : typeArgument(mapper, Mapper.class, 3);
+    }
+
+    Class<?> outputKey() {
+        if (outputKey != null) {
+            return outputKey;
+        }
+        return reducer != null ? typeArgument(reducer, Reducer.class, 2) : mapOutputKey();
+    }
+
+    Class<?> outputValue() {
+        if (outputValue != null) {
+            return outputValue;
+        }
+        return reducer != null ? typeArgument(reducer, Reducer.class, 3) : mapOutputValue();
+    }
+
+    // Return the class bound to the index-th type parameter of base in the hierarchy of
+    // cls, or null if it is not known (raw or generic classes like Mapper itself).
+    static Class<?> typeArgument(Class<?> cls, Class<?> base, int index) {
+        Map<TypeVariable<?>, Type> bindings = new HashMap<>();
+        Type t = cls;
+        while (t != null) {
+            Class<?> raw = (Class<?>) (t instanceof ParameterizedType ? ((ParameterizedType) t).getRawType() : t);
+            if (t instanceof ParameterizedType) {
+                Type[] args = ((ParameterizedType) t).getActualTypeArguments();
+                TypeVariable<?>[] vars = raw.getTypeParameters();
+                for (int i = 0; i < vars.length; i++) {
+                    bindings.put(vars[i], args[i]);
+                }
+            }
+            if (raw == base) {
+                Type arg = raw.getTypeParameters()[index];
+                while (arg instanceof TypeVariable && bindings.containsKey(arg)) {
+                    arg = bindings.get(arg);
+                }
+                if (arg instanceof Class) {
+                    return (Class<?>) arg;
+                }
+                if (arg instanceof ParameterizedType) {
+                    return (Class<?>) ((ParameterizedType) arg).getRawType();
+                }
+                return null;
+            }
+            t = raw.getGenericSuperclass();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,85 @@
+package app;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+
+import org.apache.hadoop.conf.Configuration;
+
+// Keep only the ratings given in a period: from app.time.from (included) to
+// app.time.to (excluded). A bound is a year (2015), a month (2015-03), a day
+// (2015-03-14), all in UTC, or a number of seconds since the epoch.
+// The mappers drop the ratings outside the window (Metrics.Records.OUT_OF_WINDOW).
+// With the year/month partitioned layout of Ingest (-D app.ingest.partition=month),
+// Pipeline.sources does not even list the partitions outside the window, so the
+// files scanned only cover the months of the window.
+// Enable it with: -D app.time.from=2015 -D app.time.to=2016-07
+public class TimeWindow {
+
+    public static final String FROM = "app.time.from";
+    public static final String TO = "app.time.to";
+
+    private final long from;
+    private final long to;
+
+    private TimeWindow(long from, long to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    public static boolean isEnabled(Configuration conf) {
+        return conf.get(FROM) != null || conf.get(TO) != null;
+    }
+
+    // The window of the configuration; without bounds it contains every rating.
+    public static TimeWindow get(Configuration conf) {
+        return new TimeWindow(parse(conf.get(FROM), Long.MIN_VALUE), parse(conf.get(TO), Long.MAX_VALUE));
+    }
+
+    static long parse(String s, long missing) {
+        if (s == null || s.trim().isEmpty()) {
+            return missing;
+        }
+        s = s.trim();
+        try {
+            if (s.length() == 4) {
+                return toSeconds(LocalDate.of(Integer.parseInt(s), 1, 1));
+            }
+            if (s.length() == 7 && s.charAt(4) == '-') {
+                return toSeconds(YearMonth.parse(s).atDay(1));
+            }
+            if (s.length() == 10 && s.charAt(4) == '-') {
+                return toSeconds(LocalDate.parse(s));
+            }
+            return Long.parseLong(s);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid time bound " + s + ", use yyyy, yyyy-MM, yyyy-MM-dd or seconds", e);
+        }
+    }
+
+    private static long toSeconds(LocalDate day) {
+        return day.atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+    }
+
+    // The first second of a month and of the next one.
+    static long monthStart(int year, int month) {
+        return toSeconds(LocalDate.of(year, month, 1));
+    }
+
+    static long monthEnd(int year, int month) {
+        return toSeconds(LocalDate.of(year, month, 1).plusMonths(1));
+    }
+
+    public boolean isAll() {
+        return from == Long.MIN_VALUE && to == Long.MAX_VALUE;
+    }
+
+    public boolean contains(long seconds) {
+        return seconds >= from && seconds < to;
+    }
+
+    // Return true if some second of [start, end) is in the window.
+    public boolean overlaps(long start, long end) {
+        return start < to && end > from;
+    }
+}
@@ -0,0 +1,102 @@
+package app;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+
+// Interned titles: each distinct title gets a dense index 0, 1, 2, ... and its UTF-8
+// bytes are stored once in a single byte[] (offsets[i]..offsets[i+1] is title i).
+// The lookup is an open-addressing table of indexes hashed on the bytes, so interning
+// a title that is already known allocates nothing.
+class TitleDictionary {
+
+    // estimated bytes held per title besides its UTF-8 bytes: its offset, its hash and
+    // up to 4 slots of the table (which is between 1/4 and 1/2 full)
+    static final int BYTES_PER_TITLE = 24;
+
+    private byte[] bytes = new byte[1 << 16];
+    private int[] offsets = new int[1025];
+    private int[] hashes = new int[1024];
+    private int size = 0;
+    // index + 1 of the title in each slot, 0 when the slot is free
+    private int[] table = new int[2048];
+
+    public int size() {
+        return size;
+    }
+
+    // Estimated bytes held for the titles, to compare with a memory budget.
+    public long memory() {
+        return offsets[size] + (long) size * BYTES_PER_TITLE;
+    }
+
+    // Remove all the titles, keeping the arrays for the next ones.
+    public void clear() {
+        Arrays.fill(table, 0);
+        size = 0;
+    }
+
+    // Return the index of the title, adding it if it is new.
+    public int intern(Text title) {
+        return intern(title.getBytes(), 0, title.getLength());
+    }
+
+    public int intern(byte[] b, int off, int len) {
+        int h = WritableComparator.hashBytes(b, off, len);
+        int mask = table.length - 1;
+        int i = slot(h);
+        while (table[i] != 0) {
+            int t = table[i] - 1;
+            if (hashes[t] == h && WritableComparator.compareBytes(bytes, offsets[t], offsets[t + 1] - offsets[t],
+                    b, off, len) == 0) {
+                return t;
+            }
+            i = (i + 1) & mask;
+        }
+        if (size == hashes.length) {
+            hashes = Arrays.copyOf(hashes, size * 2);
+            offsets = Arrays.copyOf(offsets, size * 2 + 1);
+        }
+        int start = offsets[size];
+        if (start + len > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, start + len));
+        }
+        System.arraycopy(b, off, bytes, start, len);
+        offsets[size + 1] = start + len;
+        hashes[size] = h;
+        table[i] = size + 1;
+        size++;
+        if (size > table.length / 2) {
+            rehash();
+        }
+        return size - 1;
+    }
+
+    public void get(int index, Text out) {
+        out.set(bytes, offsets[index], offsets[index + 1] - offsets[index]);
+    }
+
+    // Append the bytes of the title to out.
+    public void write(int index, DataOutputBuffer out) throws IOException {
+        out.write(bytes, offsets[index], offsets[index + 1] - offsets[index]);
+    }
+
+    private int slot(int h) {
+        return (h * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(table.length));
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+        for (int t = 0; t < size; t++) {
+            int i = slot(hashes[t]);
+            while (table[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            table[i] = t + 1;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package app;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.VIntWritable;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.util.ReflectionUtils;
+
+// Top-K mode: only the K most frequent favorites instead of the whole table.
+// Every task that holds complete counts keeps them in a bounded min-heap of K entries
+// (TopKHeap) instead of sorting all the movies: the reducers of ChainFirst Job 3 and
+// of the app.parallel merge write their K best movies, and the driver merges these
+// few candidates into <output>/part-r-00000, so ChainFirst Job 4 is not run. The
+// single reducers of ChainSec and ChainTer (and LocalEngine) select the K best the
+// same way and only write them.
+// The lines keep the format of the full table ("N movieTitle1 movieTitle2 ..."), in
+// ascending order like the full table or in descending order with app.topk.order=desc.
+// The movies tied with the K-th one are cut arbitrarily, like the favorites.
+// Enable it with: -D app.topk=20 [-D app.topk.order=desc]
+public class TopK {
+
+    public static final String K = "app.topk";
+    public static final String ORDER = "app.topk.order";
+
+    private TopK() {
+    }
+
+    public static boolean isEnabled(Configuration conf) {
+        return get(conf) > 0;
+    }
+
+    public static int get(Configuration conf) {
+        return conf.getInt(K, 0);
+    }
+
+    public static boolean isDescending(Configuration conf) {
+        String order = conf.get(ORDER, "asc");
+        if (!order.equals("asc") && !order.equals("desc")) {
+            throw new IllegalArgumentException("Invalid " + ORDER + "=" + order + ", use asc or desc");
+        }
+        return order.equals("desc");
+    }
+
+    // The K largest (frequency << 32) | item of a frequency table, in the order of the
+    // configuration.
+    static long[] select(int[] freq, Configuration conf) {
+        TopKHeap top = new TopKHeap(get(conf));
+        for (int t = 0; t < freq.length; t++) {
+            if (freq[t] > 0) {
+                top.offer((long) freq[t] << 32 | t);
+            }
+        }
+        return top.sorted(isDescending(conf));
+    }
+
+    // Run the pipeline, whose last stage writes the candidates of its tasks as
+    // (frequency, title) or (frequency, movieId), then merge them into the table.
+    public static int run(Pipeline pipeline, Configuration conf, String candidates, Path output)
+            throws IOException, InterruptedException, ClassNotFoundException {
+        int res = pipeline.run();
+        if (res != 0) {
+            return res;
+        }
+        MovieDictionary movies = null;
+        TitleDictionary titles = new TitleDictionary();
+        TopKHeap top = new TopKHeap(get(conf));
+        IntWritable count = new IntWritable();
+        Text title = new Text();
+        Path dir = new Path(candidates);
+        FileSystem fs = dir.getFileSystem(conf);
+        for (FileStatus st : fs.listStatus(dir)) {
+            String name = st.getPath().getName();
+            if (name.startsWith("_") || name.startsWith(".")) {
+                continue;
+            }
+            try (SequenceFile.Reader reader = new SequenceFile.Reader(conf, SequenceFile.Reader.file(st.getPath()))) {
+                Writable value = (Writable) ReflectionUtils.newInstance(reader.getValueClass(), conf);
+                while (reader.next(count, value)) {
+                    if (value instanceof IdWritable) {
+                        if (movies == null) {
+                            movies = new MovieDictionary();
+                            for (Path p : pipeline.paths(Pipeline.MOVIES)) {
+                                movies.load(p, conf);
+                            }
+                        }
+                        if (!movies.get(((IdWritable) value).get(), title)) {
+                            continue;
+                        }
+                    } else {
+                        title.set((Text) value);
+                    }
+                    top.offer((long) count.get() << 32 | titles.intern(title));
+                }
+            }
+        }
+        FileSystem out = output.getFileSystem(conf);
+        out.delete(output, true);
+        FavoriteTable.writeText(top.sorted(isDescending(conf)), titles, out, new Path(output, "part-r-00000"));
+        out.create(new Path(output, "_SUCCESS")).close();
+        return 0;
+    }
+}
+
+// Bounded min-heap of the K largest longs offered, as (frequency << 32) | item.
+class TopKHeap {
+
+    private final long[] heap;
+    private int size;
+
+    TopKHeap(int k) {
+        heap = new long[k];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Add v if it is among the K largest so far. Return the entry that is not in the
+    // heap anymore: v itself if it is rejected, the evicted smallest entry, or -1 if
+    // the heap was not full.
+    public long offer(long v) {
+        if (size < heap.length) {
+            int i = size++;
+            while (i > 0 && heap[(i - 1) >>> 1] > v) {
+                heap[i] = heap[(i - 1) >>> 1];
+                i = (i - 1) >>> 1;
+            }
+            heap[i] = v;
+            return -1;
+        }
+        if (heap.length == 0 || v <= heap[0]) {
+            return v;
+        }
+        long evicted = heap[0];
+        int i = 0;
+        while (true) {
+            int c = 2 * i + 1;
+            if (c >= size) {
+                break;
+            }
+            if (c + 1 < size && heap[c + 1] < heap[c]) {
+                c++;
+            }
+            if (heap[c] >= v) {
+                break;
+            }
+            heap[i] = heap[c];
+            i = c;
+        }
+        heap[i] = v;
+        return evicted;
+    }
+
+    // The entries, smallest first or largest first.
+    public long[] sorted(boolean descending) {
+        long[] order = Arrays.copyOf(heap, size);
+        Arrays.sort(order);
+        if (descending) {
+            for (int i = 0, j = order.length - 1; i < j; i++, j--) {
+                long t = order[i];
+                order[i] = order[j];
+                order[j] = t;
+            }
+        }
+        return order;
+    }
+}
+
+// Top Reduce: compute the frequency of each title (like ThirdReducer) and only write
+// the K most frequent ones of the task, in ascending order.
+// Input:  movieTitle1 count
+//         ...
+// Output: N1 movieTitle1     (K records at most)
+//         ...
+class TopTitleReducer extends Reducer<Text, VIntWritable, IntWritable, Text> {
+
+    private TopKHeap top;
+    // the titles of the heap entries; one more slot holds the title being offered
+    private Text[] titles;
+    private int free;
+    private final IntWritable num = new IntWritable();
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        int k = TopK.get(context.getConfiguration());
+        top = new TopKHeap(k);
+        titles = new Text[k + 1];
+        for (int i = 0; i <= k; i++) {
+            titles[i] = new Text();
+        }
+    }
+
+    @Override
+    public void reduce(Text key, Iterable<VIntWritable> values, Context context) throws IOException, InterruptedException {
+        int sum = 0;
+        for (VIntWritable v : values) {
+            sum += v.get();
+        }
+        titles[free].set(key);
+        long out = top.offer((long) sum << 32 | free);
+        if (out < 0) {
+            free = top.size();
+        } else {
+            free = (int) out;
+        }
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        for (long e : top.sorted(false)) {
+            num.set((int) (e >>> 32));
+            context.write(num, titles[(int) e]);
+        }
+    }
+}
+
+// Late Top Reduce: compute the frequency of each movieId (like CountIdReducer) and
+// only write the K most frequent ones of the task, in ascending order.
+// Input:  movieId1 count
+//         ...
+// Output: N1 movieId1     (K records at most)
+//         ...
+class TopIdReducer extends Reducer<IdWritable, VIntWritable, IntWritable, IdWritable> {
+
+    private TopKHeap top;
+    private final IntWritable num = new IntWritable();
+    private final IdWritable movie = new IdWritable();
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        top = new TopKHeap(TopK.get(context.getConfiguration()));
+    }
+
+    @Override
+    public void reduce(IdWritable key, Iterable<VIntWritable> values, Context context) throws IOException, InterruptedException {
+        int sum = 0;
+        for (VIntWritable v : values) {
+            sum += v.get();
+        }
+        top.offer((long) sum << 32 | key.get());
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        for (long e : top.sorted(false)) {
+            num.set((int) (e >>> 32));
+            movie.set((int) e);
+            context.write(num, movie);
+        }
+    }
+}
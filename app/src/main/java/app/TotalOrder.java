@@ -0,0 +1,81 @@
+package app;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.partition.InputSampler;
+import org.apache.hadoop.mapreduce.lib.partition.TotalOrderPartitioner;
+import org.apache.hadoop.util.ReflectionUtils;
+
+// Globally sorted output with several reducers: the driver samples the keys of the
+// input, picks split points at the quantiles and a TotalOrderPartitioner sends each
+// range of keys to its own reducer, so part-r-00000, part-r-00001, ... concatenate into
+// one sorted result. Used by stages declared with Stage.totalOrder().
+// The frequencies are very skewed (most movies are the favorite of one or two users),
+// so many quantiles are the same key: only the distinct split points are kept and the
+// number of reducers is lowered to match them.
+public class TotalOrder {
+
+    public static final String SAMPLES = "app.sort.samples";
+
+    private TotalOrder() {
+    }
+
+    // Sample the input of the job and write the partition file at partitions.
+    // Nothing is done when the job has a single reducer.
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    static void configure(Job job, Path partitions) throws IOException, InterruptedException {
+        int reducers = job.getNumReduceTasks();
+        if (reducers < 2) {
+            return;
+        }
+        Configuration conf = job.getConfiguration();
+        InputSampler.Sampler<Object, Object> sampler =
+                new InputSampler.RandomSampler<>(0.1, conf.getInt(SAMPLES, 10000), 10);
+        Object[] samples;
+        try {
+            InputFormat format = ReflectionUtils.newInstance(job.getInputFormatClass(), conf);
+            samples = sampler.getSample(format, job);
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+        List<Object> splits = splitPoints(samples, reducers, job.getSortComparator());
+
+        partitions.getFileSystem(conf).delete(partitions, false);
+        try (SequenceFile.Writer writer = SequenceFile.createWriter(conf,
+                SequenceFile.Writer.file(partitions),
+                SequenceFile.Writer.keyClass(job.getMapOutputKeyClass()),
+                SequenceFile.Writer.valueClass(NullWritable.class))) {
+            for (Object k : splits) {
+                writer.append(k, NullWritable.get());
+            }
+        }
+        job.setNumReduceTasks(splits.size() + 1);
+        job.setPartitionerClass(TotalOrderPartitioner.class);
+        TotalOrderPartitioner.setPartitionFile(conf, partitions);
+    }
+
+    // Return at most reducers - 1 distinct split points taken at the quantiles of the
+    // sorted samples.
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    static List<Object> splitPoints(Object[] samples, int reducers, RawComparator comparator) {
+        Arrays.sort(samples, comparator);
+        List<Object> splits = new ArrayList<>();
+        for (int i = 1; i < reducers && samples.length > 0; i++) {
+            Object k = samples[(int) ((long) samples.length * i / reducers)];
+            if (splits.isEmpty() || comparator.compare(splits.get(splits.size() - 1), k) < 0) {
+                splits.add(k);
+            }
+        }
+        return splits;
+    }
+}
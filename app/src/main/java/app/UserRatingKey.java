@@ -0,0 +1,116 @@
+package app;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapreduce.Partitioner;
+
+// Composite key (userId, rate) used for the secondary sort of the Second Job:
+// keys are sorted by userId and then by rate in descending order, but they are
+// partitioned and grouped by userId only. Each reduce call therefore receives all
+// the movies of a user with the best rated ones first.
+public class UserRatingKey implements WritableComparable<UserRatingKey> {
+
+    static {
+        WritableComparator.define(UserRatingKey.class, new SortComparator());
+    }
+
+    private int userId;
+    private byte rate;
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public byte getRate() {
+        return rate;
+    }
+
+    public void set(int userId, byte rate) {
+        this.userId = userId;
+        this.rate = rate;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, userId);
+        out.writeByte(rate);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        userId = WritableUtils.readVInt(in);
+        rate = in.readByte();
+    }
+
+    @Override
+    public int compareTo(UserRatingKey o) {
+        int c = Integer.compare(userId, o.userId);
+        return c != 0 ? c : Byte.compare(o.rate, rate);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof UserRatingKey && ((UserRatingKey) o).userId == userId
+                && ((UserRatingKey) o).rate == rate;
+    }
+
+    @Override
+    public int hashCode() {
+        return userId;
+    }
+
+    @Override
+    public String toString() {
+        return userId + "|" + Ratings.toString(rate);
+    }
+
+    // Sort by userId, then by rate descending, directly on the serialized bytes.
+    public static class SortComparator extends WritableComparator {
+
+        public SortComparator() {
+            super(UserRatingKey.class);
+        }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            int c = Integer.compare(IdWritable.readId(b1, s1), IdWritable.readId(b2, s2));
+            if (c != 0) {
+                return c;
+            }
+            return Byte.compare(b2[s2 + l2 - 1], b1[s1 + l1 - 1]);
+        }
+    }
+
+    // Group the keys of the same user in a single reduce call.
+    public static class GroupComparator extends WritableComparator {
+
+        public GroupComparator() {
+            super(UserRatingKey.class);
+        }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            return Integer.compare(IdWritable.readId(b1, s1), IdWritable.readId(b2, s2));
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public int compare(WritableComparable a, WritableComparable b) {
+            return Integer.compare(((UserRatingKey) a).userId, ((UserRatingKey) b).userId);
+        }
+    }
+
+    // Send every rating of a user to the same reducer, whatever its rate.
+    public static class UserPartitioner<V> extends Partitioner<UserRatingKey, V> {
+
+        @Override
+        public int getPartition(UserRatingKey key, V value, int numPartitions) {
+            return (key.userId & Integer.MAX_VALUE) % numPartitions;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package app;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.io.VIntWritable;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.util.ToolRunner;
+
+// Incremental on the local job runner: a history and two deltas of random ratings,
+// applied one after the other, must give the same table as the whole history at once.
+// Every user rates each movie at most once and never twice with the same rate, so the
+// favorite of a user does not depend on the order of the ratings.
+public class IncrementalTest extends TestCase {
+
+    private static final int USERS = 60;
+    private static final int MOVIES = 12;
+
+    private File dir;
+    private File state;
+    private List<List<String>> parts;
+
+    @Override
+    protected void setUp() throws IOException {
+        dir = Files.createTempDirectory("incremental").toFile();
+        state = new File(dir, "state");
+        // each user rates up to 10 movies with distinct rates, spread over the history
+        // (part 0) and the two deltas; the users from 40 on only appear in the deltas
+        Random random = new Random(42);
+        parts = new ArrayList<>();
+        for (int p = 0; p < 3; p++) {
+            parts.add(new ArrayList<>());
+        }
+        List<Integer> rates = new ArrayList<>();
+        List<Integer> movies = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            rates.add(i);
+        }
+        for (int i = 1; i <= MOVIES; i++) {
+            movies.add(i);
+        }
+        for (int user = 1; user <= USERS; user++) {
+            Collections.shuffle(rates, random);
+            Collections.shuffle(movies, random);
+            int n = 1 + random.nextInt(10);
+            for (int i = 0; i < n; i++) {
+                int p = user < 40 ? random.nextInt(3) : 1 + random.nextInt(2);
+                parts.get(p).add(user + "," + movies.get(i) + "," + rates.get(i) / 2.0 + "," + (1000 + p));
+            }
+        }
+    }
+
+    @Override
+    protected void tearDown() {
+        FileUtil.fullyDelete(dir);
+    }
+
+    public void testDeltasGiveTheFullTable() throws Exception {
+        Configuration conf = new Configuration();
+        conf.setInt(Incremental.GENERATIONS, 1);
+        assertEquals(0, apply(conf, "h", parts.get(0)));
+        assertEquals(0, apply(conf, "d1", parts.get(1)));
+        assertEquals(0, apply(conf, "d2", parts.get(2)));
+        // generation 1 compacted generations 0 and 1
+        assertEquals(Arrays.asList("base-00001", "counts-00002", "users-00002"), list(state));
+
+        List<String> all = new ArrayList<>();
+        for (List<String> p : parts) {
+            all.addAll(p);
+        }
+        state = new File(dir, "full");
+        assertEquals(0, apply(conf, "all", all));
+        TreeMap<Integer, TreeSet<String>> full = table("out-all");
+        assertFalse(full.isEmpty());
+        assertEquals(full, table("out-d2"));
+    }
+
+    public void testUncommittedGenerationIsDropped() throws Exception {
+        Configuration conf = new Configuration();
+        assertEquals(0, apply(conf, "h", parts.get(0)));
+        // what a run that failed before the commit of generation 1 leaves
+        for (String name : new String[] { "users-00001", "counts-00001", "base-00001" }) {
+            File d = new File(state, name);
+            assertTrue(d.mkdir());
+            touch(new File(d, "part-r-00000"));
+        }
+        assertEquals(0, apply(conf, "d1", parts.get(1)));
+        assertEquals(Arrays.asList("counts-00001", "users-00000", "users-00001"), list(state));
+        assertTrue(new File(state, "counts-00001/" + Incremental.COMMITTED).exists());
+        // the MapFile of the new generation, not the file left by the failed run
+        assertTrue(new File(state, "users-00001/part-r-00000").isDirectory());
+
+        state = new File(dir, "full");
+        List<String> all = new ArrayList<>(parts.get(0));
+        all.addAll(parts.get(1));
+        assertEquals(0, apply(conf, "all", all));
+        assertEquals(table("out-all"), table("out-d1"));
+    }
+
+    public void testStaleGenerationsAreRemoved() throws Exception {
+        Configuration conf = new Configuration();
+        conf.setInt(Incremental.GENERATIONS, 1);
+        assertEquals(0, apply(conf, "h", parts.get(0)));
+        assertEquals(0, apply(conf, "d1", parts.get(1)));
+        assertEquals(Arrays.asList("base-00001", "counts-00001"), list(state));
+        // an older base and a generation already in base-00001, e.g. left by a
+        // compaction interrupted before it removed its inputs
+        File old = new File(state, "base-00000");
+        assertTrue(old.mkdir());
+        touch(new File(old, "_SUCCESS"));
+        assertTrue(new File(state, "users-00001").mkdir());
+        assertEquals(0, apply(conf, "d2", parts.get(2)));
+        assertEquals(Arrays.asList("base-00001", "counts-00002", "users-00002"), list(state));
+    }
+
+    public void testNegativeCountFails() throws Exception {
+        Reducer<IdWritable, VIntWritable, IdWritable, VIntWritable>.Context context = TestContexts.reduceContext(
+                new Configuration(), new Counters(), (k, v) -> fail("nothing must be written"));
+        try {
+            new CountMergeReducer().reduce(new IdWritable(7), Arrays.asList(new VIntWritable(1), new VIntWritable(-2)),
+                    context);
+            fail("a negative frequency must fail");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("movie 7"));
+        }
+    }
+
+    // Write the ratings to the delta directory <name> and apply it to the state, the
+    // table goes to out-<name>.
+    private int apply(Configuration conf, String name, List<String> ratings) throws Exception {
+        File delta = new File(dir, name);
+        assertTrue(delta.mkdir());
+        try (PrintWriter out = new PrintWriter(new File(delta, "movies.csv"), "UTF-8")) {
+            out.println("movieId,title,genres");
+            for (int i = 1; i <= MOVIES; i++) {
+                out.println(i + ",M" + i + ",Drama");
+            }
+        }
+        try (PrintWriter out = new PrintWriter(new File(delta, "ratings.csv"), "UTF-8")) {
+            out.println("userId,movieId,rating,timestamp");
+            for (String r : ratings) {
+                out.println(r);
+            }
+        }
+        String[] args = { delta.getPath(), state.getPath(), new File(dir, "out-" + name).getPath() };
+        return ToolRunner.run(new Configuration(conf), new Incremental(), args);
+    }
+
+    // The lines "N title1 title2 ..." of the table, as N -> titles.
+    private TreeMap<Integer, TreeSet<String>> table(String out) throws IOException {
+        TreeMap<Integer, TreeSet<String>> table = new TreeMap<>();
+        for (File f : new File(dir, out).listFiles((d, name) -> name.startsWith("part-"))) {
+            for (String line : Files.readAllLines(f.toPath(), StandardCharsets.UTF_8)) {
+                String[] kv = line.split("\t");
+                TreeSet<String> titles = new TreeSet<>(Arrays.asList(kv[1].split(" ")));
+                assertNull(line, table.put(Integer.parseInt(kv[0]), titles));
+            }
+        }
+        return table;
+    }
+
+    // The generation directories of the state, by name.
+    private static List<String> list(File state) {
+        List<String> names = new ArrayList<>();
+        for (String name : state.list()) {
+            if (Incremental.generation(name) >= 0) {
+                names.add(name);
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    private static void touch(File f) throws IOException {
+        assertTrue(f.createNewFile());
+    }
+}
@@ -0,0 +1,155 @@
+package app;
+
+import static app.UserRatingKeyTest.serialize;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+
+// The raw comparators of JoinKey and GroupUserKey must order the serialized keys like
+// compareTo: the title of a movie before its ratings, the best rate of a user first,
+// and the grouping and partitioning must ignore the tag and the rate.
+public class JoinKeyTest extends TestCase {
+
+    private static final int[] IDS = { 0, 1, -1, 127, 128, -113, -129, 65536, -65537, 1 << 24, Integer.MAX_VALUE,
+            Integer.MIN_VALUE };
+    private static final int[] SALTS = { 0, 1, 5, 127, 128, 300 };
+    private static final byte[] TAGS = { JoinValue.TITLE, JoinValue.RATING };
+    private static final byte[] RATES = { 0, 1, 10 };
+
+    private final List<JoinKey> joinKeys = new ArrayList<>();
+    private final List<GroupUserKey> groupKeys = new ArrayList<>();
+
+    @Override
+    protected void setUp() {
+        for (int id : IDS) {
+            for (int salt : SALTS) {
+                for (byte tag : TAGS) {
+                    JoinKey k = new JoinKey();
+                    k.set(id, salt, tag);
+                    joinKeys.add(k);
+                }
+            }
+            for (int userId : IDS) {
+                for (byte rate : RATES) {
+                    GroupUserKey k = new GroupUserKey();
+                    k.set(id, userId, rate);
+                    groupKeys.add(k);
+                }
+            }
+        }
+    }
+
+    public void testRoundTrip() throws IOException {
+        for (JoinKey k : joinKeys) {
+            assertEquals(k, read(k, new JoinKey()));
+        }
+        for (GroupUserKey k : groupKeys) {
+            assertEquals(k, read(k, new GroupUserKey()));
+        }
+    }
+
+    public void testJoinKeyOrder() throws IOException {
+        WritableComparator sort = WritableComparator.get(JoinKey.class);
+        assertTrue(sort instanceof JoinKey.SortComparator);
+        checkOrder(sort, joinKeys);
+        // the title first in each (movieId, salt)
+        for (int i = 0; i < joinKeys.size(); i += 2) {
+            JoinKey title = joinKeys.get(i);
+            JoinKey rating = joinKeys.get(i + 1);
+            assertEquals(JoinValue.TITLE, title.getTag());
+            assertEquals(JoinValue.RATING, rating.getTag());
+            assertTrue(title.toString(), compareRaw(sort, title, rating) < 0);
+        }
+    }
+
+    public void testJoinKeyGroupsIgnoreTheTag() throws IOException {
+        JoinKey.GroupComparator group = new JoinKey.GroupComparator();
+        for (JoinKey a : joinKeys) {
+            for (JoinKey b : joinKeys) {
+                int c = Integer.compare(a.getMovieId(), b.getMovieId());
+                int expected = Integer.signum(c != 0 ? c : Integer.compare(a.getSalt(), b.getSalt()));
+                assertEquals(a + " " + b, expected, Integer.signum(compareRaw(group, a, b)));
+                assertEquals(a + " " + b, expected, Integer.signum(group.compare(a, b)));
+            }
+        }
+    }
+
+    public void testSaltPartitioner() {
+        JoinKey.SaltPartitioner<Writable> partitioner = new JoinKey.SaltPartitioner<>();
+        for (int n : new int[] { 1, 4, 7 }) {
+            for (JoinKey k : joinKeys) {
+                int p = partitioner.getPartition(k, null, n);
+                assertTrue(k + " " + p, p >= 0 && p < n);
+                JoinKey other = new JoinKey();
+                other.set(k.getMovieId(), k.getSalt(), k.getTag() == JoinValue.TITLE ? JoinValue.RATING : JoinValue.TITLE);
+                assertEquals(k.toString(), p, partitioner.getPartition(other, null, n));
+            }
+            // the salts 0..n-1 of a movie go to n different reducers
+            for (int id : IDS) {
+                boolean[] used = new boolean[n];
+                for (int salt = 0; salt < n; salt++) {
+                    JoinKey k = new JoinKey();
+                    k.set(id, salt, JoinValue.RATING);
+                    int p = partitioner.getPartition(k, null, n);
+                    assertFalse(k.toString(), used[p]);
+                    used[p] = true;
+                }
+            }
+        }
+    }
+
+    public void testGroupUserKeyOrder() throws IOException {
+        WritableComparator sort = WritableComparator.get(GroupUserKey.class);
+        assertTrue(sort instanceof GroupUserKey.SortComparator);
+        checkOrder(sort, groupKeys);
+    }
+
+    public void testGroupUserKeyGroupsIgnoreTheRate() throws IOException {
+        GroupUserKey.GroupComparator group = new GroupUserKey.GroupComparator();
+        GroupUserKey.GroupUserPartitioner<Writable> partitioner = new GroupUserKey.GroupUserPartitioner<>();
+        for (GroupUserKey a : groupKeys) {
+            for (GroupUserKey b : groupKeys) {
+                int c = Integer.compare(a.getGroup(), b.getGroup());
+                int expected = Integer.signum(c != 0 ? c : Integer.compare(a.getUserId(), b.getUserId()));
+                assertEquals(a + " " + b, expected, Integer.signum(compareRaw(group, a, b)));
+                assertEquals(a + " " + b, expected, Integer.signum(group.compare(a, b)));
+                if (expected == 0) {
+                    assertEquals(a + " " + b, partitioner.getPartition(a, null, 7), partitioner.getPartition(b, null, 7));
+                }
+            }
+        }
+    }
+
+    // The raw comparator agrees with compareTo on every pair of keys.
+    private static <K extends WritableComparable<K>> void checkOrder(WritableComparator sort, List<K> keys)
+            throws IOException {
+        for (K a : keys) {
+            for (K b : keys) {
+                assertEquals(a + " " + b, Integer.signum(a.compareTo(b)), Integer.signum(compareRaw(sort, a, b)));
+            }
+        }
+    }
+
+    private static int compareRaw(WritableComparator c, Writable a, Writable b) throws IOException {
+        byte[] x = serialize(a);
+        byte[] y = serialize(b);
+        return c.compare(x, 2, x.length - 4, y, 2, y.length - 4);
+    }
+
+    private static <W extends Writable> W read(Writable w, W into) throws IOException {
+        byte[] b = serialize(w);
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(b, 2, b.length - 4);
+        into.readFields(in);
+        assertEquals(0, in.available());
+        return into;
+    }
+}
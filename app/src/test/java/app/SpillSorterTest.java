@@ -0,0 +1,188 @@
+package app;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.MRConfig;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.mapreduce.Reducer;
+
+// SpillSorter with budgets of a few records, so that the records are spread over many
+// runs, against the same records sorted and combined in memory.
+public class SpillSorterTest extends TestCase {
+
+    private File dir;
+    private Configuration conf;
+    private Counters counters;
+
+    @Override
+    protected void setUp() throws IOException {
+        dir = Files.createTempDirectory("spill").toFile();
+        conf = new Configuration();
+        conf.set(MRConfig.LOCAL_DIR, dir.getPath());
+        counters = new Counters();
+    }
+
+    @Override
+    protected void tearDown() {
+        FileUtil.fullyDelete(dir);
+    }
+
+    public void testRecordsInMemory() throws IOException {
+        check(1 << 20, 0);
+    }
+
+    // a few tens of runs, merged in a single pass
+    public void testRunsAreCombined() throws IOException {
+        check(4096, 2);
+    }
+
+    // hundreds of runs, merged two at a time
+    public void testMergeInSeveralPasses() throws IOException {
+        conf.setInt(MRJobConfig.IO_SORT_FACTOR, 2);
+        check(256, 100);
+    }
+
+    public void testKeysWithoutValues() throws IOException {
+        conf.setInt(MRJobConfig.IO_SORT_FACTOR, 2);
+        Random random = new Random(7);
+        TreeMap<Long, Long> expected = new TreeMap<>();
+        try (SpillSorter sorter = new SpillSorter(context(), "keys", 100)) {
+            for (int i = 0; i < 1000; i++) {
+                long key = random.nextInt(50) - 25;
+                sorter.add(key, 1);
+                expected.merge(key, 1L, Long::sum);
+            }
+            assertTrue(sorter.getRuns() > 2);
+            TreeMap<Long, Long> merged = new TreeMap<>();
+            try (SpillSorter.Cursor c = sorter.merge()) {
+                while (c.next()) {
+                    assertEquals(0, c.getLength());
+                    assertNull(merged.put(c.getKey(), c.getCount()));
+                }
+            }
+            assertEquals(expected, merged);
+        }
+        assertEquals(0, countFiles(dir));
+    }
+
+    // The spilled table of AscendReduce, merged by title then sorted again by
+    // frequency on the disk, is the same as the table built in memory.
+    public void testAscendReduceSpilled() throws IOException, InterruptedException {
+        List<Text> values = new ArrayList<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 2000; i++) {
+            // skewed frequencies, with many titles of the same frequency
+            int t = (int) Math.sqrt(random.nextInt(150 * 150));
+            values.add(new Text(t % 3 == 0 ? "\"Movie " + t + ", The (1995)\"" : "Movie " + t + " (1995)"));
+        }
+        TreeMap<Integer, TreeSet<String>> memory = ascend(values, new Configuration(conf));
+        assertTrue(memory.size() > 10);
+
+        Configuration spill = new Configuration(conf);
+        spill.set(Spill.MEMORY, "1k");
+        spill.setInt(MRJobConfig.IO_SORT_FACTOR, 2);
+        assertEquals(memory, ascend(values, spill));
+        assertTrue(counters.findCounter(Metrics.Spills.RUNS).getValue() > 2);
+        assertEquals(0, countFiles(dir));
+    }
+
+    // Add random records (key, value, count), most of them several times, with memory
+    // bytes of buffer, and check the merged records against a sorted map.
+    private void check(long memory, int minRuns) throws IOException {
+        Random random = new Random(11);
+        TreeMap<String, Long> expected = new TreeMap<>();
+        try (SpillSorter sorter = new SpillSorter(context(), "records", memory)) {
+            for (int i = 0; i < 3000; i++) {
+                long key = random.nextInt(40);
+                byte[] value = new byte[random.nextInt(5)];
+                for (int j = 0; j < value.length; j++) {
+                    value[j] = (byte) ('a' + random.nextInt(3));
+                }
+                long count = 1 + random.nextInt(3);
+                // the value is copied from the middle of a larger array
+                byte[] b = new byte[value.length + 4];
+                System.arraycopy(value, 0, b, 2, value.length);
+                sorter.add(key, b, 2, value.length, count);
+                expected.merge(record(key, value, 0, value.length), count, Long::sum);
+            }
+            assertTrue(sorter.getRuns() >= minRuns);
+            if (minRuns == 0) {
+                assertEquals(0, sorter.getRuns());
+            }
+            List<String> merged = new ArrayList<>();
+            List<Long> counts = new ArrayList<>();
+            try (SpillSorter.Cursor c = sorter.merge()) {
+                while (c.next()) {
+                    merged.add(record(c.getKey(), c.getData(), 0, c.getLength()));
+                    counts.add(c.getCount());
+                }
+            }
+            // in order, each record once
+            assertEquals(new ArrayList<>(expected.keySet()), merged);
+            assertEquals(new ArrayList<>(expected.values()), counts);
+            assertTrue(sorter.isEmpty());
+        }
+        assertEquals(minRuns > 0, counters.findCounter(Metrics.Spills.RUNS).getValue() > 0);
+        assertEquals(0, countFiles(dir));
+    }
+
+    // Run AscendReduce on the values and return its table as frequency -> titles.
+    private TreeMap<Integer, TreeSet<String>> ascend(List<Text> values, Configuration c)
+            throws IOException, InterruptedException {
+        TreeMap<Integer, TreeSet<String>> table = new TreeMap<>();
+        Reducer<Text, Text, IntWritable, Text>.Context context = TestContexts.reduceContext(c, counters, (k, v) -> {
+            int f = ((IntWritable) k).get();
+            assertNull(table.put(f, new TreeSet<>(splitTitles(v.toString()))));
+        });
+        AscendReduce reducer = new AscendReduce();
+        reducer.setup(context);
+        reducer.reduce(new Text("1"), values, context);
+        reducer.cleanup(context);
+        return table;
+    }
+
+    // The titles of a line, quoted or "Movie N (1995)".
+    private static List<String> splitTitles(String line) {
+        List<String> titles = new ArrayList<>();
+        String[] words = line.split(" ");
+        for (int i = 0; i < words.length;) {
+            int n = words[i].startsWith("\"") ? 4 : 3;
+            titles.add(String.join(" ", Arrays.copyOfRange(words, i, i + n)));
+            i += n;
+        }
+        return titles;
+    }
+
+    private static String record(long key, byte[] b, int off, int len) {
+        // keys of the same sign and width sort like their numbers
+        return String.format("%05d:%s", key, new String(b, off, len, StandardCharsets.US_ASCII));
+    }
+
+    private Reducer<Object, Object, Object, Object>.Context context() {
+        return TestContexts.reduceContext(conf, counters, (k, v) -> fail("nothing must be written"));
+    }
+
+    private static int countFiles(File d) {
+        int n = 0;
+        for (File f : d.listFiles()) {
+            n += f.isDirectory() ? countFiles(f) : 1;
+        }
+        return n;
+    }
+}
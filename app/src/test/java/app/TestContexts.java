@@ -0,0 +1,58 @@
+package app;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.function.BiConsumer;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.ReduceContext;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.reduce.WrappedReducer;
+
+// Reducer contexts for the tests (like the ones of the benchmarks): the
+// records written are handed to a callback, the counters are kept in counters, and
+// only the methods used by the reducers of the project are implemented.
+// The callback gets the objects reused by the task, it must copy what it keeps.
+class TestContexts {
+
+    private TestContexts() {
+    }
+
+    private static Object common(String method, Object[] args, Configuration conf, Counters counters,
+            BiConsumer<Object, Object> out) {
+        switch (method) {
+            case "write":
+                out.accept(args[0], args[1]);
+                return null;
+            case "getConfiguration":
+                return conf;
+            case "getCounter":
+                return args.length == 1 ? counters.findCounter((Enum<?>) args[0])
+                        : counters.findCounter((String) args[0], (String) args[1]);
+            case "getCacheFiles":
+                return null;
+            case "getTaskAttemptID":
+                return new TaskAttemptID();
+            case "progress":
+            case "setStatus":
+                return null;
+            case "toString":
+                return "TestContext";
+            case "hashCode":
+                return 0;
+            default:
+                throw new UnsupportedOperationException(method);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <KI, VI, KO, VO> Reducer<KI, VI, KO, VO>.Context reduceContext(Configuration conf, Counters counters,
+            BiConsumer<Object, Object> out) {
+        InvocationHandler h = (proxy, m, args) -> common(m.getName(), args, conf, counters, out);
+        ReduceContext<KI, VI, KO, VO> ctx = (ReduceContext<KI, VI, KO, VO>) Proxy.newProxyInstance(
+                TestContexts.class.getClassLoader(), new Class<?>[] { ReduceContext.class }, h);
+        return new WrappedReducer<KI, VI, KO, VO>().getReducerContext(ctx);
+    }
+}
@@ -0,0 +1,130 @@
+package app;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparator;
+
+// The raw comparators of UserRatingKey and IdWritable must order the serialized keys
+// like compareTo, for the ids of every vint size, and the user grouping and
+// partitioning must not depend on the rate.
+public class UserRatingKeyTest extends TestCase {
+
+    // 1 to 5 byte vints, on both sides of each size boundary
+    private static final int[] IDS = { 0, 1, -1, 127, 128, -112, -113, -128, -129, 255, 256, 65535, 65536,
+            -65536, -65537, 1 << 20, (1 << 24) - 1, 1 << 24, -(1 << 24), Integer.MAX_VALUE, Integer.MIN_VALUE };
+    private static final byte[] RATES = { 0, 1, 7, 10, Byte.MAX_VALUE };
+
+    private final List<UserRatingKey> keys = new ArrayList<>();
+    private final List<byte[]> serialized = new ArrayList<>();
+
+    @Override
+    protected void setUp() throws IOException {
+        for (int id : IDS) {
+            for (byte rate : RATES) {
+                UserRatingKey k = new UserRatingKey();
+                k.set(id, rate);
+                keys.add(k);
+                serialized.add(serialize(k));
+            }
+        }
+    }
+
+    public void testRoundTrip() throws IOException {
+        for (int i = 0; i < keys.size(); i++) {
+            UserRatingKey k = new UserRatingKey();
+            DataInputBuffer in = new DataInputBuffer();
+            in.reset(serialized.get(i), 2, serialized.get(i).length - 4);
+            k.readFields(in);
+            assertEquals(keys.get(i), k);
+        }
+    }
+
+    public void testSortComparator() {
+        WritableComparator sort = WritableComparator.get(UserRatingKey.class);
+        assertTrue(sort instanceof UserRatingKey.SortComparator);
+        for (int i = 0; i < keys.size(); i++) {
+            for (int j = 0; j < keys.size(); j++) {
+                UserRatingKey a = keys.get(i);
+                UserRatingKey b = keys.get(j);
+                int expected = Integer.signum(a.compareTo(b));
+                assertEquals(a + " " + b, expected, Integer.signum(compareRaw(sort, i, j)));
+                if (a.getUserId() == b.getUserId() && a.getRate() != b.getRate()) {
+                    // the best rate first
+                    assertEquals(a + " " + b, Integer.signum(b.getRate() - a.getRate()), expected);
+                }
+            }
+        }
+    }
+
+    public void testGroupComparator() {
+        UserRatingKey.GroupComparator group = new UserRatingKey.GroupComparator();
+        for (int i = 0; i < keys.size(); i++) {
+            for (int j = 0; j < keys.size(); j++) {
+                UserRatingKey a = keys.get(i);
+                UserRatingKey b = keys.get(j);
+                int expected = Integer.signum(Integer.compare(a.getUserId(), b.getUserId()));
+                assertEquals(a + " " + b, expected, Integer.signum(compareRaw(group, i, j)));
+                assertEquals(a + " " + b, expected, Integer.signum(group.compare(a, b)));
+            }
+        }
+    }
+
+    public void testUserPartitioner() {
+        UserRatingKey.UserPartitioner<Writable> partitioner = new UserRatingKey.UserPartitioner<>();
+        for (int n : new int[] { 1, 3, 7, 64 }) {
+            for (int id : IDS) {
+                int expected = -1;
+                for (byte rate : RATES) {
+                    UserRatingKey k = new UserRatingKey();
+                    k.set(id, rate);
+                    int p = partitioner.getPartition(k, null, n);
+                    assertTrue(k + " " + p, p >= 0 && p < n);
+                    if (expected < 0) {
+                        expected = p;
+                    }
+                    assertEquals(k.toString(), expected, p);
+                }
+            }
+        }
+    }
+
+    public void testIdComparator() throws IOException {
+        WritableComparator ids = WritableComparator.get(IdWritable.class);
+        assertTrue(ids instanceof IdWritable.Comparator);
+        for (int a : IDS) {
+            byte[] ba = serialize(new IdWritable(a));
+            for (int b : IDS) {
+                byte[] bb = serialize(new IdWritable(b));
+                int expected = Integer.signum(new IdWritable(a).compareTo(new IdWritable(b)));
+                assertEquals(a + " " + b, expected,
+                        Integer.signum(ids.compare(ba, 2, ba.length - 4, bb, 2, bb.length - 4)));
+            }
+            assertEquals(a, IdWritable.readId(ba, 2));
+        }
+    }
+
+    private int compareRaw(WritableComparator c, int i, int j) {
+        byte[] a = serialized.get(i);
+        byte[] b = serialized.get(j);
+        return c.compare(a, 2, a.length - 4, b, 2, b.length - 4);
+    }
+
+    // The serialized writable between two bytes before and two bytes after it, like
+    // a record in the middle of a sort buffer.
+    static byte[] serialize(Writable w) throws IOException {
+        DataOutputBuffer out = new DataOutputBuffer();
+        out.write(new byte[] { -1, 5 });
+        w.write(out);
+        out.write(new byte[] { -128, 127 });
+        byte[] b = new byte[out.getLength()];
+        System.arraycopy(out.getData(), 0, b, 0, b.length);
+        return b;
+    }
+}
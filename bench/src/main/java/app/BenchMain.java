@@ -0,0 +1,23 @@
+package app;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Run the JMH benchmarks with the GC profiler always enabled, so that the allocation
+// rate per record (gc.alloc.rate.norm) is reported next to the throughput.
+// Usage: java -jar bench/target/benchmarks.jar [JMH options] [benchmark regexp]
+public class BenchMain {
+
+    public static void main(String[] args) throws Exception {
+        for (String a : args) {
+            if (a.equals("-h") || a.equals("-l") || a.equals("-lp") || a.equals("-lprof")) {
+                org.openjdk.jmh.Main.main(args);
+                return;
+            }
+        }
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        new Runner(new OptionsBuilder().parent(cmd).addProfiler(GCProfiler.class).build()).run();
+    }
+}
@@ -0,0 +1,100 @@
+package app;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Throughput of the mappers, in input records per second (one operation is one
+// rating, or one movies.csv line for movieMapperMovies).
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MapperBenchmarks {
+
+    static final int RECORDS = 10000;
+    static final int MOVIES = 100;
+
+    private Text[] ratingLines;
+    private Text[] movieLines;
+    private MovieRatings[] movieRatings;
+
+    private MovieMapper movieMapper;
+    private Mapper<Object, Text, IdWritable, JoinValue>.Context ratingsContext;
+    private Mapper<Object, Text, IdWritable, JoinValue>.Context moviesContext;
+    private UserMapper userMapper;
+    private Mapper<Object, MovieRatings, UserRatingKey, Text>.Context userContext;
+
+    private Blackhole sink;
+
+    @Setup
+    public void setup() throws IOException, InterruptedException {
+        SyntheticRatings data = new SyntheticRatings(42, 5000, 10000);
+        ratingLines = data.ratingLines(RECORDS);
+        movieLines = new Text[RECORDS];
+        for (int i = 0; i < RECORDS; i++) {
+            movieLines[i] = data.movieLine(i + 1);
+        }
+        movieRatings = new MovieRatings[MOVIES];
+        for (int i = 0; i < MOVIES; i++) {
+            movieRatings[i] = data.movieRatings(i + 1, RECORDS / MOVIES);
+        }
+
+        Configuration conf = new Configuration();
+        ratingsContext = MockContexts.mapContext(conf, new FileSplit(new Path("ratings.csv"), 0, 0, null),
+                (k, v) -> sink.consume(v));
+        moviesContext = MockContexts.mapContext(conf, new FileSplit(new Path("movies.csv"), 0, 0, null),
+                (k, v) -> sink.consume(v));
+        userContext = MockContexts.mapContext(conf, null, (k, v) -> sink.consume(k));
+        movieMapper = new MovieMapper();
+        userMapper = new UserMapper();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void movieMapperRatings(Blackhole bh) throws IOException, InterruptedException {
+        sink = bh;
+        movieMapper.setup(ratingsContext);
+        for (Text line : ratingLines) {
+            movieMapper.map(null, line, ratingsContext);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void movieMapperMovies(Blackhole bh) throws IOException, InterruptedException {
+        sink = bh;
+        movieMapper.setup(moviesContext);
+        for (Text line : movieLines) {
+            movieMapper.map(null, line, moviesContext);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void userMapper(Blackhole bh) throws IOException, InterruptedException {
+        sink = bh;
+        for (MovieRatings m : movieRatings) {
+            userMapper.map(null, m, userContext);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package app;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.function.BiConsumer;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.MapContext;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.ReduceContext;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.counters.GenericCounter;
+import org.apache.hadoop.mapreduce.lib.map.WrappedMapper;
+import org.apache.hadoop.mapreduce.lib.reduce.WrappedReducer;
+
+// Mapper and Reducer contexts that run outside of a task: the records written are
+// handed to a callback (a JMH Blackhole) and only the methods used by the mappers and
+// reducers of the project are implemented.
+class MockContexts {
+
+    private MockContexts() {
+    }
+
+    private static Object common(String method, Object[] args, Configuration conf, InputSplit split,
+            BiConsumer<Object, Object> out) {
+        switch (method) {
+            case "write":
+                out.accept(args[0], args[1]);
+                return null;
+            case "getConfiguration":
+                return conf;
+            case "getInputSplit":
+                return split;
+            case "getCounter":
+                return new GenericCounter();
+            case "getCacheFiles":
+                return null;
+            case "getTaskAttemptID":
+                return new TaskAttemptID();
+            case "progress":
+            case "setStatus":
+                return null;
+            case "toString":
+                return "MockContext";
+            case "hashCode":
+                return 0;
+            default:
+                throw new UnsupportedOperationException(method);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <KI, VI, KO, VO> Mapper<KI, VI, KO, VO>.Context mapContext(Configuration conf, InputSplit split,
+            BiConsumer<Object, Object> out) {
+        InvocationHandler h = (proxy, m, args) -> common(m.getName(), args, conf, split, out);
+        MapContext<KI, VI, KO, VO> ctx = (MapContext<KI, VI, KO, VO>) Proxy.newProxyInstance(
+                MockContexts.class.getClassLoader(), new Class<?>[] { MapContext.class }, h);
+        return new WrappedMapper<KI, VI, KO, VO>().getMapContext(ctx);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <KI, VI, KO, VO> Reducer<KI, VI, KO, VO>.Context reduceContext(Configuration conf,
+            BiConsumer<Object, Object> out) {
+        InvocationHandler h = (proxy, m, args) -> common(m.getName(), args, conf, null, out);
+        ReduceContext<KI, VI, KO, VO> ctx = (ReduceContext<KI, VI, KO, VO>) Proxy.newProxyInstance(
+                MockContexts.class.getClassLoader(), new Class<?>[] { ReduceContext.class }, h);
+        return new WrappedReducer<KI, VI, KO, VO>().getReducerContext(ctx);
+    }
+}
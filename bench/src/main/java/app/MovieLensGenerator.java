@@ -0,0 +1,118 @@
+package app;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+// Seeded generator of a MovieLens-shaped input directory (movies.csv, ratings.csv).
+// The popularity of the movies and the activity of the users follow Zipf laws with
+// the given exponents (0 = uniform); the ranks are shuffled so that the hot movies and
+// users are spread over the ids. The ratings follow the distribution of MovieLens 25M
+// (mostly 3 to 4 stars). The same arguments always produce the same files.
+// Usage: MovieLensGenerator <dir> <ratings> [movies] [users] [movieSkew] [userSkew] [seed]
+class MovieLensGenerator {
+
+    // Cumulative share of each half-star rating (0.5 .. 5.0) in MovieLens 25M, in %.
+    static final double[] RATES = { 1.6, 4.7, 6.3, 12.9, 17.9, 37.5, 50.2, 76.8, 85.3, 100 };
+
+    final long ratings;
+    final int movies;
+    final int users;
+    final double movieSkew;
+    final double userSkew;
+    final long seed;
+
+    MovieLensGenerator(long ratings, int movies, int users, double movieSkew, double userSkew, long seed) {
+        this.ratings = ratings;
+        this.movies = movies;
+        this.users = users;
+        this.movieSkew = movieSkew;
+        this.userSkew = userSkew;
+        this.seed = seed;
+    }
+
+    // About the ratings per user of MovieLens 25M.
+    static int defaultUsers(long ratings) {
+        return (int) Math.max(1000, ratings / 150);
+    }
+
+    void generate(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        SyntheticRatings titles = new SyntheticRatings(seed, movies, users);
+        try (Writer w = writer(new File(dir, "movies.csv"))) {
+            w.write("movieId,title,genres\n");
+            for (int id = 1; id <= movies; id++) {
+                w.write(titles.movieLine(id).toString());
+                w.write('\n');
+            }
+        }
+        Random rnd = new Random(seed);
+        int[] movieIds = permutation(movies, rnd);
+        int[] userIds = permutation(users, rnd);
+        Zipf movie = new Zipf(rnd, movies, movieSkew);
+        Zipf user = new Zipf(rnd, users, userSkew);
+        long time = 789652009L;
+        StringBuilder sb = new StringBuilder();
+        try (Writer w = writer(new File(dir, "ratings.csv"))) {
+            w.write("userId,movieId,rating,timestamp\n");
+            for (long i = 0; i < ratings; i++) {
+                time += rnd.nextInt(16);
+                sb.setLength(0);
+                sb.append(userIds[user.next() - 1]).append(',')
+                        .append(movieIds[movie.next() - 1]).append(',')
+                        .append(Ratings.toString(rate(rnd))).append(',')
+                        .append(time).append('\n');
+                w.append(sb);
+            }
+        }
+    }
+
+    private static byte rate(Random rnd) {
+        double p = rnd.nextDouble() * 100;
+        byte r = 1;
+        while (r < RATES.length && p >= RATES[r - 1]) {
+            r++;
+        }
+        return r;
+    }
+
+    // The ids 1..n in a random order.
+    private static int[] permutation(int n, Random rnd) {
+        int[] ids = new int[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = i + 1;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            int t = ids[i];
+            ids[i] = ids[j];
+            ids[j] = t;
+        }
+        return ids;
+    }
+
+    private static Writer writer(File f) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f), StandardCharsets.UTF_8), 1 << 20);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: MovieLensGenerator <dir> <ratings> [movies] [users] [movieSkew] [userSkew] [seed]");
+            System.exit(2);
+        }
+        long ratings = Long.parseLong(args[1]);
+        int movies = args.length > 2 ? Integer.parseInt(args[2]) : 62000;
+        int users = args.length > 3 ? Integer.parseInt(args[3]) : defaultUsers(ratings);
+        double movieSkew = args.length > 4 ? Double.parseDouble(args[4]) : 1.0;
+        double userSkew = args.length > 5 ? Double.parseDouble(args[5]) : 0.5;
+        long seed = args.length > 6 ? Long.parseLong(args[6]) : 1;
+        new MovieLensGenerator(ratings, movies, users, movieSkew, userSkew, seed).generate(new File(args[0]));
+    }
+}
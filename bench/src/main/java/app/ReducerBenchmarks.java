@@ -0,0 +1,146 @@
+package app;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Throughput of the reducers, in input values per second. The values are already
+// grouped like after the shuffle.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ReducerBenchmarks {
+
+    static final int RECORDS = 10000;
+    static final int GROUPS = 100;
+
+    // FirstReducer: GROUPS movies, each with its title and RECORDS / GROUPS ratings
+    private IdWritable[] movieIds;
+    private List<List<JoinValue>> joinValues;
+    // SecondReducer: GROUPS users, each with RECORDS / GROUPS titles best rated first
+    private UserRatingKey[] userKeys;
+    private List<List<Text>> userTitles;
+    // AllReducer: GROUPS movies with RECORDS / GROUPS ratings under the key "1"
+    private List<MovieRatings> movies;
+    // FourthReducer: GROUPS frequencies, each with RECORDS / GROUPS titles
+    private IntWritable[] counts;
+    private List<List<Text>> titles;
+
+    private Reducer<IdWritable, JoinValue, IdWritable, MovieRatings>.Context firstContext;
+    private Reducer<UserRatingKey, Text, IdWritable, Text>.Context secondContext;
+    private Reducer<Text, MovieRatings, IntWritable, Text>.Context allContext;
+    private Reducer<IntWritable, Text, Text, Text>.Context fourthContext;
+
+    private final FirstReducer firstReducer = new FirstReducer();
+    private final SecondReducer secondReducer = new SecondReducer();
+    private final FourthReducer fourthReducer = new FourthReducer();
+
+    private Blackhole sink;
+
+    @Setup
+    public void setup() {
+        SyntheticRatings data = new SyntheticRatings(42, 5000, 10000);
+        int perGroup = RECORDS / GROUPS;
+        movieIds = new IdWritable[GROUPS];
+        joinValues = new ArrayList<>();
+        userKeys = new UserRatingKey[GROUPS];
+        userTitles = new ArrayList<>();
+        movies = new ArrayList<>();
+        counts = new IntWritable[GROUPS];
+        titles = new ArrayList<>();
+        for (int g = 0; g < GROUPS; g++) {
+            movieIds[g] = new IdWritable(g + 1);
+            List<JoinValue> values = new ArrayList<>();
+            JoinValue t = new JoinValue();
+            t.setTitle(new Text(data.title(g + 1)));
+            values.add(t);
+            for (int i = 1; i < perGroup; i++) {
+                JoinValue r = new JoinValue();
+                r.setRating(data.user(), data.rate());
+                values.add(r);
+            }
+            joinValues.add(values);
+
+            userKeys[g] = new UserRatingKey();
+            userKeys[g].set(g + 1, (byte) 10);
+            List<Text> ut = new ArrayList<>();
+            for (int i = 0; i < perGroup; i++) {
+                ut.add(new Text(data.title(data.movie())));
+            }
+            userTitles.add(ut);
+
+            movies.add(data.movieRatings(g + 1, perGroup));
+
+            counts[g] = new IntWritable(g + 1);
+            Text[] ft = new Text[perGroup];
+            for (int i = 0; i < perGroup; i++) {
+                ft[i] = new Text(data.title(data.movie()));
+            }
+            titles.add(Arrays.asList(ft));
+        }
+
+        Configuration conf = new Configuration();
+        firstContext = MockContexts.reduceContext(conf, (k, v) -> sink.consume(v));
+        secondContext = MockContexts.reduceContext(conf, (k, v) -> sink.consume(v));
+        allContext = MockContexts.reduceContext(conf, (k, v) -> sink.consume(v));
+        fourthContext = MockContexts.reduceContext(conf, (k, v) -> sink.consume(v));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void firstReducer(Blackhole bh) throws IOException, InterruptedException {
+        sink = bh;
+        for (int g = 0; g < GROUPS; g++) {
+            firstReducer.reduce(movieIds[g], joinValues.get(g), firstContext);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void secondReducer(Blackhole bh) throws IOException, InterruptedException {
+        sink = bh;
+        for (int g = 0; g < GROUPS; g++) {
+            secondReducer.reduce(userKeys[g], userTitles.get(g), secondContext);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void allReducer(Blackhole bh) throws IOException, InterruptedException {
+        sink = bh;
+        // the reducer keeps its state between calls, so each invocation is a new task
+        AllReducer reducer = new AllReducer();
+        reducer.reduce(new Text("1"), movies, allContext);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void fourthReducer(Blackhole bh) throws IOException, InterruptedException {
+        sink = bh;
+        for (int g = 0; g < GROUPS; g++) {
+            fourthReducer.reduce(counts[g], titles.get(g), fourthContext);
+        }
+    }
+}
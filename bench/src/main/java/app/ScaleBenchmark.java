@@ -0,0 +1,177 @@
+package app;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+// End-to-end benchmark of the chains with the local job runner, on data generated by
+// MovieLensGenerator for every combination of size and skew.
+// Usage: ScaleBenchmark [-D ...] <workdir> <report.json> [name=value ...] with
+//   ratings=1000000,10000000   numbers of ratings
+//   movieSkew=1.0              Zipf exponents of the movie popularity
+//   userSkew=0.5               Zipf exponents of the user activity
+//   chains=ChainFirst,ChainSec,ChainTer
+//   movies=62000 users=<ratings / 150> seed=1
+// The -D options (e.g. -D app.join=replicated) are given to every chain. The generated
+// inputs are kept in <workdir>/data and reused by the next runs. The report is a JSON
+// array with one entry per run (chain, dataset, exit code, wall time and the
+// PipelineReport of the run); it is rewritten after every run.
+public class ScaleBenchmark extends Configured implements Tool {
+
+    @Override
+    public int run(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: ScaleBenchmark [-D ...] <workdir> <report.json> [name=value ...]");
+            return 2;
+        }
+        File work = new File(args[0]).getAbsoluteFile();
+        File reportFile = new File(args[1]).getAbsoluteFile();
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("ratings", "1000000,10000000");
+        params.put("movieSkew", "1.0");
+        params.put("userSkew", "0.5");
+        params.put("chains", "ChainFirst,ChainSec,ChainTer");
+        params.put("movies", "62000");
+        params.put("users", "");
+        params.put("seed", "1");
+        for (int i = 2; i < args.length; i++) {
+            int eq = args[i].indexOf('=');
+            if (eq < 0 || !params.containsKey(args[i].substring(0, eq))) {
+                System.err.println("Unknown parameter " + args[i]);
+                return 2;
+            }
+            params.put(args[i].substring(0, eq), args[i].substring(eq + 1));
+        }
+
+        List<String> runs = new ArrayList<>();
+        int failures = 0;
+        for (String r : list(params.get("ratings"))) {
+            for (String ms : list(params.get("movieSkew"))) {
+                for (String us : list(params.get("userSkew"))) {
+                    long ratings = Long.parseLong(r);
+                    int movies = Integer.parseInt(params.get("movies"));
+                    int users = params.get("users").isEmpty()
+                            ? MovieLensGenerator.defaultUsers(ratings) : Integer.parseInt(params.get("users"));
+                    long seed = Long.parseLong(params.get("seed"));
+                    MovieLensGenerator gen = new MovieLensGenerator(ratings, movies, users,
+                            Double.parseDouble(ms), Double.parseDouble(us), seed);
+                    String name = "r" + ratings + "-m" + gen.movieSkew + "-u" + gen.userSkew
+                            + "-n" + movies + "x" + users + "-s" + seed;
+                    File data = new File(work, "data/" + name);
+                    long generateMs = generate(gen, data);
+
+                    Map<String, Object> dataset = new LinkedHashMap<>();
+                    dataset.put("name", name);
+                    dataset.put("ratings", ratings);
+                    dataset.put("movies", movies);
+                    dataset.put("users", users);
+                    dataset.put("movieSkew", gen.movieSkew);
+                    dataset.put("userSkew", gen.userSkew);
+                    dataset.put("seed", seed);
+                    dataset.put("bytes", new File(data, "ratings.csv").length() + new File(data, "movies.csv").length());
+                    dataset.put("generateMs", generateMs);
+
+                    for (String chain : list(params.get("chains"))) {
+                        Map<String, Object> run = new LinkedHashMap<>();
+                        run.put("chain", chain);
+                        run.put("dataset", dataset);
+                        String json = runChain(chain, data, new File(work, "run"), run);
+                        if (!Integer.valueOf(0).equals(run.get("exit"))) {
+                            failures++;
+                        }
+                        runs.add(json);
+                        writeReport(reportFile, runs);
+                    }
+                }
+            }
+        }
+        return failures == 0 ? 0 : 1;
+    }
+
+    private static List<String> list(String s) {
+        return Arrays.asList(s.split(","));
+    }
+
+    // Generate the dataset unless an earlier run already did. Return the time it took.
+    private static long generate(MovieLensGenerator gen, File dir) throws IOException {
+        File done = new File(dir, "_GENERATED");
+        if (done.exists()) {
+            return 0;
+        }
+        System.out.println("Generating " + dir);
+        long t0 = System.currentTimeMillis();
+        gen.generate(dir);
+        if (!done.createNewFile()) {
+            throw new IOException("Cannot create " + done);
+        }
+        return System.currentTimeMillis() - t0;
+    }
+
+    // Run one chain in this JVM with the local job runner. The intermediate outputs
+    // (relative paths) go to dir. Return the JSON entry of the run.
+    private String runChain(String chain, File data, File dir, Map<String, Object> run) throws Exception {
+        Configuration conf = new Configuration(getConf());
+        conf.set("mapreduce.framework.name", "local");
+        conf.set("fs.defaultFS", "file:///");
+        File pipelineReport = new File(dir, chain + "-report.json");
+        conf.set(PipelineReport.REPORT, pipelineReport.toURI().toString());
+        FileSystem fs = FileSystem.getLocal(conf);
+        Path cwd = fs.getWorkingDirectory();
+        fs.mkdirs(new Path(dir.toURI()));
+        fs.delete(new Path(pipelineReport.toURI()), false);
+        fs.setWorkingDirectory(new Path(dir.toURI()));
+        Tool tool = (Tool) Class.forName("app." + chain).getDeclaredConstructor().newInstance();
+        String[] args = { data.toURI().toString(), new File(dir, chain + "-output").toURI().toString() };
+        System.out.println("Running " + chain + " on " + data.getName());
+        long t0 = System.currentTimeMillis();
+        int exit;
+        try {
+            exit = ToolRunner.run(conf, tool, args);
+        } finally {
+            fs.setWorkingDirectory(cwd);
+        }
+        long wall = System.currentTimeMillis() - t0;
+        System.out.println(chain + " on " + data.getName() + ": exit " + exit + ", " + wall + " ms");
+        run.put("exit", exit);
+        run.put("wallMs", wall);
+
+        StringBuilder sb = new StringBuilder();
+        PipelineReport.toJson(sb, run);
+        if (pipelineReport.exists()) {
+            // splice the report of the pipeline in the entry
+            sb.setLength(sb.length() - 1);
+            sb.append(",\"report\":")
+                    .append(new String(Files.readAllBytes(pipelineReport.toPath()), StandardCharsets.UTF_8).trim())
+                    .append('}');
+        }
+        return sb.toString();
+    }
+
+    private static void writeReport(File f, List<String> runs) throws IOException {
+        File parent = f.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        try (OutputStream out = Files.newOutputStream(f.toPath())) {
+            out.write(("[\n" + String.join(",\n", runs) + "\n]\n").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.exit(ToolRunner.run(new Configuration(), new ScaleBenchmark(), args));
+    }
+}
@@ -0,0 +1,75 @@
+package app;
+
+import java.util.Random;
+
+import org.apache.hadoop.io.Text;
+
+// Seeded MovieLens-shaped records: movies.csv lines with 20-80 byte titles (some quoted
+// with commas), ratings.csv lines with half-star ratings, and the binary records built
+// from them.
+class SyntheticRatings {
+
+    static final String[] GENRES = { "Action", "Adventure", "Comedy", "Drama", "Romance", "Thriller" };
+
+    final Random rnd;
+    final int movies;
+    final int users;
+
+    SyntheticRatings(long seed, int movies, int users) {
+        this.rnd = new Random(seed);
+        this.movies = movies;
+        this.users = users;
+    }
+
+    String title(int movieId) {
+        StringBuilder sb = new StringBuilder("Movie number ").append(movieId);
+        int words = new Random(movieId).nextInt(6);
+        for (int i = 0; i < words; i++) {
+            sb.append(" word").append(i);
+        }
+        return sb.append(" (").append(1950 + movieId % 70).append(')').toString();
+    }
+
+    Text movieLine(int movieId) {
+        String t = title(movieId);
+        if (movieId % 10 == 0) {
+            t = "\"" + t + ", The\"";
+        }
+        return new Text(movieId + "," + t + "," + GENRES[movieId % GENRES.length] + "|" + GENRES[(movieId / 7) % GENRES.length]);
+    }
+
+    // Popular movies get more ratings (a rough power law).
+    int movie() {
+        return 1 + (int) (movies * Math.pow(rnd.nextDouble(), 3));
+    }
+
+    int user() {
+        return 1 + rnd.nextInt(users);
+    }
+
+    byte rate() {
+        return (byte) (1 + rnd.nextInt(10));
+    }
+
+    Text ratingLine() {
+        return new Text(user() + "," + movie() + "," + Ratings.toString(rate()) + "," + (900000000 + rnd.nextInt(600000000)));
+    }
+
+    Text[] ratingLines(int n) {
+        Text[] lines = new Text[n];
+        for (int i = 0; i < n; i++) {
+            lines[i] = ratingLine();
+        }
+        return lines;
+    }
+
+    // All the ratings of one movie, as written by FirstReducer.
+    MovieRatings movieRatings(int movieId, int n) {
+        MovieRatings m = new MovieRatings();
+        m.setTitle(new Text(title(movieId)));
+        for (int i = 0; i < n; i++) {
+            m.add(user(), rate());
+        }
+        return m;
+    }
+}
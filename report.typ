@@ -48,7 +48,7 @@ To execute the code, open a new terminal and use the followings commands in the
 
 ```shell
 mvn package
-cp target/hadoop-1.0.jar data
+cp app/target/hadoop-1.0.jar data
 ```
 
 Then, run this command in the `namenode` container: 